@@ -28,6 +28,10 @@ android {
 
         buildConfigField("String", "WC_KEY", "\"$key\"")
         buildConfigField("String", "WC_SECRET", "\"$secret\"")
+
+        // Optional prebuilt catalog (see :snapshot-tool) imported on a fresh install
+        val snapshotUrl = localProperties.getProperty("snapshot.url", "")
+        buildConfigField("String", "SNAPSHOT_URL", "\"$snapshotUrl\"")
     }
 
     buildFeatures {
@@ -55,6 +59,7 @@ dependencies {
 
     implementation("com.squareup.retrofit2:retrofit:2.9.0")
     implementation("com.squareup.retrofit2:converter-gson:2.9.0")
+    implementation("com.squareup.okhttp3:okhttp:4.9.0")
     implementation("com.squareup.okhttp3:logging-interceptor:4.9.0")
 
     implementation("com.github.bumptech.glide:glide:4.15.1")
@@ -64,4 +69,9 @@ dependencies {
 
     // NEW: PhotoView for Zoomable Images
     implementation("com.github.chrisbanes:PhotoView:2.3.0")
+
+    // Debug builds only: fake WooCommerce server for SyncBenchmarkActivity
+    debugImplementation("com.squareup.okhttp3:mockwebserver:4.9.0")
+
+    testImplementation("junit:junit:4.13.2")
 }
\ No newline at end of file
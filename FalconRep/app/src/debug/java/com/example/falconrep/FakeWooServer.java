@@ -0,0 +1,322 @@
+package com.example.falconrep;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Debug-only stand-in for the WooCommerce REST API, so sync can be measured without
+ * touching the real shop.
+ *
+ * Serves a synthetic catalog generated from a seed: /products (page or offset paging,
+ * modified_after, orderby=id, include, _fields=id, X-WP-Total/X-WP-TotalPages, ETag + 304), /products/{id}/variations,
+ * /products/categories and /img/{id}.jpg. Latency and bandwidth are shaped per response.
+ */
+public class FakeWooServer {
+
+    public static class Config {
+        public int products = 1000;
+        public int variableEvery = 5;          // every Nth product is variable
+        public int variationsPerProduct = 6;
+        public int categories = 40;
+        public int descriptionChars = 600;
+        public int imageBytes = 30 * 1024;
+        public long latencyMs = 150;            // before the response headers
+        public long bytesPerSecond = 0;         // 0 = unthrottled
+        public long seed = 42;
+    }
+
+    private static final String BASE_DATE = "2020-01-01T00:00:00";
+
+    private final Config config;
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+
+    // Guarded by "this": per-product modification time and the listing order (modified desc, id desc)
+    private final String[] modified;
+    private Integer[] byModified;
+    private final byte[] image;
+
+    public FakeWooServer(Config config) {
+        this.config = config;
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        modified = new String[config.products];
+        Arrays.fill(modified, BASE_DATE);
+        image = new byte[config.imageBytes];
+        new Random(config.seed).nextBytes(image);
+        reorder();
+
+        server.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request) {
+                try {
+                    return shape(route(request));
+                } catch (Exception e) {
+                    return new MockResponse().setResponseCode(500).setBody(String.valueOf(e));
+                }
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /** Base URL to hand to NetworkClient.setBaseUrl(). */
+    public String getApiUrl() {
+        return server.url("/wp-json/wc/v3/").toString();
+    }
+
+    public int getRequestCount() { return server.getRequestCount(); }
+    public int getNotModifiedCount() { return notModified.get(); }
+
+    /** Marks {@code percent} of the products as edited now, for an incremental run. */
+    public synchronized void touch(int percent) {
+        String now = iso.format(new Date());
+        Random random = new Random(config.seed + System.nanoTime());
+        int count = config.products * percent / 100;
+        for (int i = 0; i < count; i++) modified[random.nextInt(config.products)] = now;
+        reorder();
+    }
+
+    private synchronized void reorder() {
+        Integer[] order = new Integer[config.products];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byDate = modified[b].compareTo(modified[a]);
+                return byDate != 0 ? byDate : b - a;
+            }
+        });
+        byModified = order;
+    }
+
+    private MockResponse route(RecordedRequest request) throws IOException {
+        HttpUrl url = request.getRequestUrl();
+        String path = url.encodedPath();
+        if (path.startsWith("/img/")) {
+            return new MockResponse().setHeader("Content-Type", "image/jpeg").setBody(new Buffer().write(image));
+        }
+
+        List<String> segments = url.pathSegments(); // wp-json, wc, v3, products, ...
+        List<String> rest = segments.subList(3, segments.size());
+        if (rest.size() == 2 && "categories".equals(rest.get(1))) return categories(url);
+        if (rest.size() == 3 && "variations".equals(rest.get(2))) return variations(Integer.parseInt(rest.get(1)), url);
+        if (rest.size() == 1) return products(request, url);
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private MockResponse products(RecordedRequest request, HttpUrl url) throws IOException {
+        int perPage = intParam(url, "per_page", 10);
+        String modifiedAfter = url.queryParameter("modified_after");
+        boolean idsOnly = "id".equals(url.queryParameter("_fields"));
+
+        List<Integer> listing;
+        synchronized (this) {
+            if (modifiedAfter == null) {
+                listing = Arrays.asList(byModified); // reorder() replaces the array, never mutates it
+            } else {
+                listing = new ArrayList<>();
+                for (Integer index : byModified) {
+                    if (modified[index].compareTo(modifiedAfter) > 0) listing.add(index);
+                }
+            }
+        }
+
+        if ("id".equals(url.queryParameter("orderby"))) {
+            listing = new ArrayList<>(listing);
+            Collections.sort(listing, "desc".equals(url.queryParameter("order"))
+                    ? Collections.<Integer>reverseOrder() : Comparator.<Integer>naturalOrder());
+        }
+        String include = url.queryParameter("include");
+        if (include != null) {
+            Set<Integer> wanted = new HashSet<>();
+            for (String id : include.split(",")) wanted.add(Integer.parseInt(id.trim()) - 1);
+            List<Integer> filtered = new ArrayList<>();
+            for (Integer index : listing) {
+                if (wanted.contains(index)) filtered.add(index);
+            }
+            listing = filtered;
+        }
+
+        int offset = url.queryParameter("offset") != null
+                ? intParam(url, "offset", 0)
+                : (intParam(url, "page", 1) - 1) * perPage;
+        int total = listing.size();
+        int totalPages = (total + perPage - 1) / perPage;
+        if (url.queryParameter("offset") == null && intParam(url, "page", 1) > Math.max(1, totalPages)) {
+            return new MockResponse().setResponseCode(400).setBody("{\"code\":\"rest_post_invalid_page_number\"}");
+        }
+
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        for (int i = offset; i < Math.min(total, offset + perPage); i++) {
+            int index = listing.get(i);
+            if (idsOnly) {
+                json.beginObject().name("id").value(index + 1).endObject();
+            } else {
+                writeProduct(json, index);
+            }
+        }
+        json.endArray();
+        json.close();
+
+        return withETag(request, new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setHeader("X-WP-Total", total)
+                .setHeader("X-WP-TotalPages", totalPages), out.toString());
+    }
+
+    private void writeProduct(JsonWriter json, int index) throws IOException {
+        int id = index + 1;
+        Random random = new Random(config.seed * 31 + id);
+        String date;
+        synchronized (this) {
+            date = modified[index];
+        }
+        boolean variable = config.variableEvery > 0 && id % config.variableEvery == 0;
+        int category = 1 + random.nextInt(Math.max(1, config.categories));
+
+        json.beginObject();
+        json.name("id").value(id);
+        json.name("name").value("Product " + id);
+        json.name("sku").value("SKU-" + id);
+        json.name("price").value(String.format(Locale.US, "%.2f", 1 + random.nextInt(50000) / 100.0));
+        json.name("description").value(text(random, config.descriptionChars) + (date.equals(BASE_DATE) ? "" : " (edited " + date + ")"));
+        json.name("type").value(variable ? "variable" : "simple");
+        json.name("date_modified_gmt").value(date);
+        json.name("images").beginArray()
+                .beginObject().name("src").value(server.url("/img/" + id + ".jpg").toString()).endObject()
+                .endArray();
+        json.name("categories").beginArray()
+                .beginObject().name("id").value(category).name("name").value("Category " + category).endObject()
+                .endArray();
+        json.name("meta_data").beginArray()
+                .beginObject().name("key").value("_b2b_price").name("value").value(String.format(Locale.US, "%.2f", 1 + random.nextInt(40000) / 100.0)).endObject()
+                .endArray();
+        json.endObject();
+    }
+
+    private MockResponse variations(int productId, HttpUrl url) throws IOException {
+        int perPage = intParam(url, "per_page", 10);
+        int page = intParam(url, "page", 1);
+        int total = productId % Math.max(1, config.variableEvery) == 0 ? config.variationsPerProduct : 0;
+        Random random = new Random(config.seed * 17 + productId);
+
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        for (int i = (page - 1) * perPage; i < Math.min(total, page * perPage); i++) {
+            json.beginObject();
+            json.name("id").value(productId * 1000 + i);
+            json.name("price").value(String.format(Locale.US, "%.2f", 1 + random.nextInt(50000) / 100.0));
+            json.name("attributes").beginArray()
+                    .beginObject().name("name").value("Size").name("option").value("Option " + i).endObject()
+                    .endArray();
+            json.name("meta_data").beginArray().endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.close();
+
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setHeader("X-WP-Total", total)
+                .setHeader("X-WP-TotalPages", Math.max(1, (total + perPage - 1) / perPage))
+                .setBody(out.toString());
+    }
+
+    private MockResponse categories(HttpUrl url) throws IOException {
+        int perPage = intParam(url, "per_page", 10);
+        int page = intParam(url, "page", 1);
+
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        for (int id = (page - 1) * perPage + 1; id <= Math.min(config.categories, page * perPage); id++) {
+            json.beginObject();
+            json.name("id").value(id);
+            json.name("name").value("Category " + id);
+            json.name("slug").value("category-" + id);
+            json.name("count").value(config.products / Math.max(1, config.categories));
+            json.endObject();
+        }
+        json.endArray();
+        json.close();
+
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setHeader("X-WP-TotalPages", Math.max(1, (config.categories + perPage - 1) / perPage))
+                .setBody(out.toString());
+    }
+
+    // Content hash as ETag, 304 when the client already has it
+    private MockResponse withETag(RecordedRequest request, MockResponse response, String body) {
+        String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            notModified.incrementAndGet();
+            return response.setResponseCode(304).setHeader("ETag", etag);
+        }
+        return response.setHeader("ETag", etag).setBody(body);
+    }
+
+    private MockResponse shape(MockResponse response) {
+        response.setHeadersDelay(config.latencyMs, TimeUnit.MILLISECONDS);
+        if (config.bytesPerSecond > 0) {
+            // Throttle in 100ms slices
+            response.throttleBody(Math.max(1, config.bytesPerSecond / 10), 100, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append((char) ('a' + random.nextInt(26)));
+            if (random.nextInt(7) == 0) sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static int intParam(HttpUrl url, String name, int fallback) {
+        String value = url.queryParameter(name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
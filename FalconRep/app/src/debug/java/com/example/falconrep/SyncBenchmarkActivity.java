@@ -0,0 +1,180 @@
+package com.example.falconrep;
+
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.work.Data;
+import androidx.work.ListenableWorker;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Debug-only harness: runs a full and then an incremental sync against FakeWooServer and
+ * reports wall time, requests, bytes, DB writes and peak heap for each.
+ *
+ * WARNING: wipes the local catalog first. Parameters are intent extras, e.g.
+ *   adb shell am start -n com.example.falconrep/.SyncBenchmarkActivity \
+ *       --ei products 20000 --ei latency_ms 300 --el bytes_per_second 250000 --ei changed_percent 2 --ez images false
+ * Results are shown on screen and logged under "FalconBench".
+ */
+public class SyncBenchmarkActivity extends AppCompatActivity {
+
+    private static final String TAG = "FalconBench";
+
+    private TextView txtReport;
+    private ScrollView scroll;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        txtReport = new TextView(this);
+        txtReport.setTypeface(Typeface.MONOSPACE);
+        txtReport.setTextSize(12);
+        txtReport.setPadding(24, 24, 24, 24);
+        scroll = new ScrollView(this);
+        scroll.addView(txtReport);
+        setContentView(scroll);
+
+        Intent intent = getIntent();
+        FakeWooServer.Config config = new FakeWooServer.Config();
+        config.products = intent.getIntExtra("products", config.products);
+        config.variableEvery = intent.getIntExtra("variable_every", config.variableEvery);
+        config.variationsPerProduct = intent.getIntExtra("variations", config.variationsPerProduct);
+        config.descriptionChars = intent.getIntExtra("description_chars", config.descriptionChars);
+        config.latencyMs = intent.getIntExtra("latency_ms", (int) config.latencyMs);
+        config.bytesPerSecond = intent.getLongExtra("bytes_per_second", config.bytesPerSecond);
+        int changedPercent = intent.getIntExtra("changed_percent", 2);
+        boolean images = intent.getBooleanExtra("images", false);
+        int maxInFlight = intent.getIntExtra(SyncWorker.KEY_MAX_IN_FLIGHT, 0);
+
+        new Thread(() -> run(config, changedPercent, images, maxInFlight), "FalconBench").start();
+    }
+
+    private void run(FakeWooServer.Config config, int changedPercent, boolean images, int maxInFlight) {
+        FakeWooServer server = new FakeWooServer(config);
+        try {
+            report(String.format(Locale.US, "Catalog: %d products, every %d variable x %d variations, %d ms latency, %s",
+                    config.products, config.variableEvery, config.variationsPerProduct, config.latencyMs,
+                    config.bytesPerSecond > 0 ? config.bytesPerSecond / 1024 + " KB/s" : "unthrottled"));
+
+            resetLocalState();
+            server.start();
+            NetworkClient.setBaseUrl(server.getApiUrl());
+
+            Data.Builder input = new Data.Builder();
+            if (maxInFlight > 0) input.putInt(SyncWorker.KEY_MAX_IN_FLIGHT, maxInFlight);
+
+            runWorker("full sync", SyncWorker.class, input.build(), server);
+            if (images) runWorker("images", ImageWorker.class, Data.EMPTY, server);
+
+            server.touch(changedPercent);
+            runWorker("incremental (" + changedPercent + "% changed)", SyncWorker.class, input.build(), server);
+
+            report("Done. Local catalog now holds benchmark data: run a normal sync to restore it.");
+        } catch (Exception e) {
+            Log.e(TAG, "Benchmark failed", e);
+            report("FAILED: " + e);
+        } finally {
+            NetworkClient.setBaseUrl(null);
+            try { server.shutdown(); } catch (Exception ignored) {}
+        }
+    }
+
+    // Fresh install conditions: no DB, no sync bookkeeping, no HTTP cache
+    private void resetLocalState() {
+        WorkManager.getInstance(this).cancelAllWork();
+        NetworkClient.setBaseUrl(null); // closes the HTTP cache before we delete it
+        deleteDatabase("WooStore.db");
+        getSharedPreferences("FalconStorePrefs", MODE_PRIVATE).edit().clear().commit();
+        getSharedPreferences("FalconSyncState", MODE_PRIVATE).edit().clear().commit();
+        deleteRecursively(new File(getCacheDir(), "http"));
+    }
+
+    private void runWorker(String label, Class<? extends ListenableWorker> worker, Data input,
+                           FakeWooServer server) throws Exception {
+        TrafficMeter meter = NetworkClient.get(this).getTrafficMeter();
+        TrafficMeter.Snapshot trafficBefore = meter.snapshot();
+        int serverBefore = server.getRequestCount();
+        int notModifiedBefore = server.getNotModifiedCount();
+
+        Runtime.getRuntime().gc();
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+
+        long start = SystemClock.elapsedRealtime();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(worker).setInputData(input).build();
+        WorkManager workManager = WorkManager.getInstance(this);
+        workManager.enqueue(request);
+        WorkInfo info;
+        do {
+            Thread.sleep(100);
+            info = workManager.getWorkInfoById(request.getId()).get();
+        } while (info == null || !info.getState().isFinished());
+        long wallMs = SystemClock.elapsedRealtime() - start;
+        heap.interrupt();
+
+        TrafficMeter.Snapshot traffic = meter.snapshot().since(trafficBefore);
+        Data out = info.getOutputData();
+        report(String.format(Locale.US,
+                "%s: %s in %.1f s%n  %s%n  server saw %d requests (%d answered 304)%n"
+                        + "  rows written %d, skipped %d, products in DB %d%n  peak heap %.1f MB",
+                label, info.getState(), wallMs / 1000.0,
+                traffic,
+                server.getRequestCount() - serverBefore, server.getNotModifiedCount() - notModifiedBefore,
+                out.getInt("rows_written", 0), out.getInt("rows_skipped", 0),
+                new DatabaseHelper(this).getProductCount(),
+                heap.peak.get() / (1024.0 * 1024.0)));
+    }
+
+    private void report(String line) {
+        Log.i(TAG, line);
+        runOnUiThread(() -> {
+            txtReport.append(line + "\n\n");
+            scroll.post(() -> scroll.fullScroll(ScrollView.FOCUS_DOWN));
+        });
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+
+    // Samples used Java heap every 50ms; the max is a good-enough "peak" for comparing strategies
+    private static class HeapSampler extends Thread {
+        final AtomicLong peak = new AtomicLong();
+
+        HeapSampler() {
+            super("FalconBenchHeap");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!isInterrupted()) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > peak.get()) peak.set(used);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
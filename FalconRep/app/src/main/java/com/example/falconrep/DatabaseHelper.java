@@ -4,41 +4,103 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 
 import com.example.falconrep.models.Category;
 import com.example.falconrep.models.Product;
+import com.example.falconrep.models.ProductImage;
+import com.example.falconrep.models.ProductSummary;
+import com.example.falconrep.models.SearchFilter;
+import com.example.falconrep.models.SyncRun;
 import com.example.falconrep.models.Variation;
+import com.example.falconrep.utils.Prices;
 import com.example.falconrep.utils.SearchUtils;
+import com.example.falconrep.utils.SortedIds;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "WooStore.db";
-    // BUMPED VERSION to 21 to force table recreation with new token format
-    private static final int DATABASE_VERSION = 21;
+    // 22: product_state (content hashes) + variation hash column
+    // 23: sync_seen_ids (resumable zombie cleanup)
+    // 24: index on variations(parent_id)
+    // 25: sync_runs (per-run sync telemetry)
+    // 26: products is a regular table (product_state folded in), products_fts indexes it as external content
+    // 27: products_fts is FTS5 (prefix indexes, bm25) where the platform SQLite has it, FTS4 otherwise
+    // 28: product_categories join table; cat_tokens keeps only category names
+    // 29: product_images (one row per image with its download state) replaces the "###" strings
+    // 30: price_min / price_max in minor units, parsed from the price label when a row is written
+    // 31: sync_pages (validators of API pages whose rows are committed)
+    // 32: name index on IFNULL(name, '') so unnamed products have a place in the paged listing
+    // 33: sync_seen_ids dropped (the zombie scan no longer resumes across runs)
+    private static final int DATABASE_VERSION = 33;
+    // Oldest schema onUpgrade() can migrate in place (the last drop-and-recreate release)
+    private static final int MIN_MIGRATABLE_VERSION = 21;
+
+    // bm25 weights for the FTS5 columns (sku, name, search_tokens, cat_tokens): an exact SKU hit
+    // beats a name hit, which beats a skeleton / fuzzy token, which beats a category name
+    private static final String FTS5_RANK = "bm25(10.0, 5.0, 2.0, 1.0)";
+
+    // Ids per DELETE ... IN (...) statement during cleanup
+    private static final int DELETE_CHUNK_SIZE = 500;
 
     private static final String TABLE_PRODUCTS = "products";
+    // External-content FTS index over products: only the searchable columns are tokenized,
+    // everything else is read from products by rowid
+    private static final String TABLE_PRODUCTS_FTS = "products_fts";
     private static final String TABLE_VARIATIONS = "variations";
     private static final String TABLE_CATEGORIES = "categories";
+    // Which categories each product is in. Carries a copy of the product name so a category
+    // listing is read straight off an index in display order
+    private static final String TABLE_PRODUCT_CATEGORIES = "product_categories";
+    // A product's gallery, one row per image; ImageWorker's queue is the pending rows
+    private static final String TABLE_PRODUCT_IMAGES = "product_images";
+    // 22-25 only: content hashes live in products since 26
+    private static final String TABLE_PRODUCT_STATE = "product_state";
+    // 23-32 only: server product IDs collected by a zombie cleanup scan that resumed across runs
+    private static final String TABLE_SYNC_SEEN_IDS = "sync_seen_ids";
+    // One row per SyncWorker / ImageWorker run, newest MAX_SYNC_RUNS kept
+    private static final String TABLE_SYNC_RUNS = "sync_runs";
+    private static final int MAX_SYNC_RUNS = 200;
+    // ETag / Last-Modified of each API page whose rows are in the DB, keyed by a hash of the URL.
+    // Written in the same transaction as the rows, so a 304 for a page listed here really means
+    // "already stored" (the HTTP cache alone can hold pages that were never committed)
+    private static final String TABLE_SYNC_PAGES = "sync_pages";
 
     // Product Cols
-    private static final String COL_DOCID = "docid";
+    private static final String COL_ID = "id";
     private static final String COL_NAME = "name";
     private static final String COL_PRICE = "price";
     private static final String COL_DESC = "description";
-    private static final String COL_LOCAL_PATHS = "local_image_paths";
     private static final String COL_WHOLESALE_PRICE = "wholesale_price";
     private static final String COL_SKU = "sku";
-    private static final String COL_WEB_URLS = "web_image_urls";
     private static final String COL_TYPE = "product_type";
     private static final String COL_CAT_TOKENS = "cat_tokens";
     private static final String COL_DISPLAY_PRICE = "display_price";
-    private static final String COL_NEEDS_IMG_SYNC = "needs_img_sync";
     private static final String COL_SEARCH_TOKENS = "search_tokens";
+    private static final String COL_CONTENT_HASH = "content_hash";
+    private static final String COL_IMAGE_HASH = "image_hash";
+    // Integer cents parsed from display_price, for price filters and sorting (NULL = no price)
+    private static final String COL_PRICE_MIN = "price_min";
+    private static final String COL_PRICE_MAX = "price_max";
+    // 26-28 only: images live in product_images since 29. Upgraded databases keep the columns
+    // (cleared), since the platform SQLite can't drop them
+    private static final String COL_LOCAL_PATHS = "local_image_paths";
+    private static final String COL_WEB_URLS = "web_image_urls";
+    private static final String COL_NEEDS_IMG_SYNC = "needs_img_sync";
 
     // Variation Cols
     private static final String COL_VAR_ID = "var_id";
@@ -48,6 +110,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COL_VAR_IMG_WEB = "web_image";
     private static final String COL_VAR_IMG_LOCAL = "local_image";
     private static final String COL_VAR_NEEDS_IMG_SYNC = "var_needs_img_sync";
+    private static final String COL_VAR_HASH = "var_hash";
 
     // Category Cols
     private static final String COL_CAT_ID = "cat_id";
@@ -55,27 +118,46 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COL_CAT_SLUG = "cat_slug";
     private static final String COL_CAT_COUNT = "cat_count";
 
+    // Product-Category Cols
+    private static final String COL_PC_PRODUCT_ID = "product_id";
+    private static final String COL_PC_CATEGORY_ID = "category_id";
+    private static final String COL_PC_PRODUCT_NAME = "product_name";
+
+    // Product-Image Cols
+    private static final String COL_IMG_PRODUCT_ID = "product_id";
+    private static final String COL_IMG_POSITION = "position";
+    private static final String COL_IMG_WEB_URL = "web_url";
+    private static final String COL_IMG_LOCAL_PATH = "local_path";
+    private static final String COL_IMG_BYTES = "bytes";
+    private static final String COL_IMG_STATE = "state";
+
+    // A full product row (detail sheet) carries only its first image; the gallery comes from getProductImages()
+    private static final String PRODUCT_COLUMNS = "p.*, i." + COL_IMG_WEB_URL + " AS first_image_url, i." +
+            COL_IMG_LOCAL_PATH + " AS first_image_path";
+    // Grid rows: only what ProductSummary shows, plus price_min for the page key. The price label
+    // falls back the same way Product.getWholesalePrice() does for a stored row
+    private static final String SUMMARY_COLUMNS = "p." + COL_ID + ", p." + COL_NAME + ", p." + COL_PRICE_MIN +
+            ", COALESCE(NULLIF(p." + COL_DISPLAY_PRICE + ", ''), NULLIF(p." + COL_WHOLESALE_PRICE + ", ''), p." +
+            COL_PRICE + ") AS price_label, i." + COL_IMG_WEB_URL + " AS first_image_url, i." +
+            COL_IMG_LOCAL_PATH + " AS first_image_path";
+    private static final String FIRST_IMAGE_JOIN = " LEFT JOIN " + TABLE_PRODUCT_IMAGES + " i ON i." +
+            COL_IMG_PRODUCT_ID + " = p." + COL_ID + " AND i." + COL_IMG_POSITION + " = 0";
+
+    // The "category<id>" tokens cat_tokens carried before 28
+    private static final Pattern CATEGORY_ID_TOKEN = Pattern.compile("\\bcategory(\\d+)\\b");
+
+    private Boolean fts5; // null until isFts5() has looked
+
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        String createProducts = "CREATE VIRTUAL TABLE " + TABLE_PRODUCTS + " USING fts4(" +
-                COL_NAME + ", " +
-                COL_PRICE + ", " +
-                COL_WHOLESALE_PRICE + ", " +
-                COL_DESC + ", " +
-                COL_LOCAL_PATHS + ", " +
-                COL_SKU + ", " +
-                COL_WEB_URLS + ", " +
-                COL_TYPE + ", " +
-                COL_CAT_TOKENS + ", " +
-                COL_DISPLAY_PRICE + ", " +
-                COL_NEEDS_IMG_SYNC + ", " +
-                COL_SEARCH_TOKENS +
-                ")";
-        db.execSQL(createProducts);
+        createProductsTable(db);
+        createProductsIndexes(db);
+        createProductsFts(db);
+        createProductImagesTable(db);
 
         String createVariations = "CREATE TABLE " + TABLE_VARIATIONS + "(" +
                 COL_VAR_ID + " INTEGER PRIMARY KEY, " +
@@ -84,9 +166,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 COL_VAR_ATTR + " TEXT, " +
                 COL_VAR_IMG_WEB + " TEXT, " +
                 COL_VAR_IMG_LOCAL + " TEXT, " +
-                COL_VAR_NEEDS_IMG_SYNC + " INTEGER" +
+                COL_VAR_NEEDS_IMG_SYNC + " INTEGER, " +
+                COL_VAR_HASH + " INTEGER" +
                 ")";
         db.execSQL(createVariations);
+        db.execSQL("CREATE INDEX idx_variations_parent ON " + TABLE_VARIATIONS + "(" + COL_PARENT_ID + ")");
 
         String createCats = "CREATE TABLE " + TABLE_CATEGORIES + "(" +
                 COL_CAT_ID + " INTEGER PRIMARY KEY, " +
@@ -95,14 +179,439 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 COL_CAT_COUNT + " INTEGER" +
                 ")";
         db.execSQL(createCats);
+        createProductCategoriesTable(db);
+
+        createSyncRunsTable(db);
+        createSyncPagesTable(db);
+    }
+
+    private static void createProductsTable(SQLiteDatabase db) {
+        String createProducts = "CREATE TABLE " + TABLE_PRODUCTS + "(" +
+                COL_ID + " INTEGER PRIMARY KEY, " +
+                COL_NAME + " TEXT, " +
+                COL_PRICE + " TEXT, " +
+                COL_WHOLESALE_PRICE + " TEXT, " +
+                COL_DESC + " TEXT, " +
+                COL_SKU + " TEXT, " +
+                COL_TYPE + " TEXT, " +
+                COL_CAT_TOKENS + " TEXT, " +
+                COL_DISPLAY_PRICE + " TEXT, " +
+                COL_SEARCH_TOKENS + " TEXT, " +
+                COL_CONTENT_HASH + " INTEGER, " +
+                COL_IMAGE_HASH + " INTEGER, " +
+                COL_PRICE_MIN + " INTEGER, " +
+                COL_PRICE_MAX + " INTEGER" +
+                ")";
+        db.execSQL(createProducts);
+    }
+
+    private static void createProductsIndexes(SQLiteDatabase db) {
+        createNameIndex(db);
+        createPriceIndex(db);
+    }
+
+    // Catalog listing order. On the expression searchPage() sorts and seeks on, so a NULL name
+    // sorts as "" instead of falling outside every keyset range
+    private static void createNameIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX idx_products_name ON " + TABLE_PRODUCTS + "(IFNULL(" + COL_NAME + ", '') COLLATE NOCASE)");
+    }
+
+    // "Under Rs X" is a range scan on price_min, and the price sorts walk it in order
+    private static void createPriceIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX idx_products_price ON " + TABLE_PRODUCTS + "(" + COL_PRICE_MIN + ")");
+    }
+
+    // Keyed by product for gallery reads and rewrites. The state index is ImageWorker's queue
+    // (state = pending) and the offline-ready count (state = downloaded)
+    private static void createProductImagesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PRODUCT_IMAGES + "(" +
+                COL_IMG_PRODUCT_ID + " INTEGER NOT NULL, " +
+                COL_IMG_POSITION + " INTEGER NOT NULL, " +
+                COL_IMG_WEB_URL + " TEXT, " +
+                COL_IMG_LOCAL_PATH + " TEXT, " +
+                COL_IMG_BYTES + " INTEGER, " +
+                COL_IMG_STATE + " INTEGER NOT NULL DEFAULT " + ProductImage.STATE_PENDING + ", " +
+                "PRIMARY KEY(" + COL_IMG_PRODUCT_ID + ", " + COL_IMG_POSITION + ")" +
+                ") WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_product_images_state ON " + TABLE_PRODUCT_IMAGES + "(" +
+                COL_IMG_STATE + ", " + COL_IMG_PRODUCT_ID + ")");
+    }
+
+    // Keyed by product for rewrites and cleanup; the index serves category listings and counts
+    private static void createProductCategoriesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PRODUCT_CATEGORIES + "(" +
+                COL_PC_PRODUCT_ID + " INTEGER NOT NULL, " +
+                COL_PC_CATEGORY_ID + " INTEGER NOT NULL, " +
+                COL_PC_PRODUCT_NAME + " TEXT COLLATE NOCASE, " +
+                "PRIMARY KEY(" + COL_PC_PRODUCT_ID + ", " + COL_PC_CATEGORY_ID + ")" +
+                ") WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_product_categories_browse ON " + TABLE_PRODUCT_CATEGORIES + "(" +
+                COL_PC_CATEGORY_ID + ", " + COL_PC_PRODUCT_NAME + ", " + COL_PC_PRODUCT_ID + ")");
+    }
+
+    private static void createSyncPagesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_PAGES + "(" +
+                "url_hash INTEGER PRIMARY KEY, " +
+                "validator TEXT NOT NULL, " +
+                "saved_at INTEGER NOT NULL" +
+                ")");
+    }
+
+    private static void createSyncRunsTable(SQLiteDatabase db) {
+        String createRuns = "CREATE TABLE " + TABLE_SYNC_RUNS + "(" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "worker TEXT, " +
+                "started_at INTEGER, " +
+                "attempt INTEGER, " +
+                "outcome TEXT, " +
+                "error TEXT, " +
+                "duration_ms INTEGER, " +
+                "snapshot_ms INTEGER, " +
+                "products_ms INTEGER, " +
+                "variations_ms INTEGER, " +
+                "categories_ms INTEGER, " +
+                "zombies_ms INTEGER, " +
+                "images_ms INTEGER, " +
+                "requests INTEGER, " +
+                "bytes_in INTEGER, " +
+                "retries INTEGER, " +
+                "cache_hits INTEGER, " +
+                "rows_written INTEGER, " +
+                "rows_skipped INTEGER" +
+                ")";
+        db.execSQL(createRuns);
+    }
+
+    private static void createProductsFts(SQLiteDatabase db) {
+        // Most platform SQLite builds ship without FTS5 ("no such module"); search then
+        // runs on FTS4 and sorts by name instead of relevance
+        if (hasFts5(db)) {
+            createProductsFts5(db);
+        } else {
+            createProductsFts4(db);
+        }
+    }
+
+    // Tried on a throwaway temp table, ranking included. Catching a failure halfway through
+    // createProductsFts5() instead would leave the table and some triggers behind for FTS4 to
+    // collide with; this way a failure there is a real error and fails the open/upgrade
+    private static boolean hasFts5(SQLiteDatabase db) {
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE temp.fts5_probe USING fts5(a, b, c, d)");
+            db.execSQL("INSERT INTO temp.fts5_probe(fts5_probe, rank) VALUES ('rank', '" + FTS5_RANK + "')");
+            return true;
+        } catch (SQLiteException e) {
+            return false;
+        } finally {
+            db.execSQL("DROP TABLE IF EXISTS temp.fts5_probe");
+        }
+    }
+
+    /**
+     * FTS4 external content: the index stores only tokens, the text is read from products.
+     * SQLite doesn't maintain such an index by itself, so triggers mirror every change. The old
+     * tokens have to be removed BEFORE the row changes (FTS reads them from products), and the
+     * update triggers only fire for the indexed columns, so image flags, paths and prices can be
+     * updated without touching the index.
+     */
+    private static void createProductsFts4(SQLiteDatabase db) {
+        String indexed = COL_NAME + ", " + COL_SKU + ", " + COL_CAT_TOKENS + ", " + COL_SEARCH_TOKENS;
+        String newValues = "new." + COL_NAME + ", new." + COL_SKU + ", new." + COL_CAT_TOKENS + ", new." + COL_SEARCH_TOKENS;
+
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PRODUCTS_FTS + " USING fts4(content=\"" + TABLE_PRODUCTS + "\", " + indexed + ")");
+        db.execSQL("CREATE TRIGGER products_fts_bd BEFORE DELETE ON " + TABLE_PRODUCTS + " BEGIN " +
+                "DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + COL_ID + "; END");
+        db.execSQL("CREATE TRIGGER products_fts_bu BEFORE UPDATE OF " + indexed + " ON " + TABLE_PRODUCTS + " BEGIN " +
+                "DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + COL_ID + "; END");
+        db.execSQL("CREATE TRIGGER products_fts_au AFTER UPDATE OF " + indexed + " ON " + TABLE_PRODUCTS + " BEGIN " +
+                "INSERT INTO " + TABLE_PRODUCTS_FTS + "(docid, " + indexed + ") VALUES (new." + COL_ID + ", " + newValues + "); END");
+        db.execSQL("CREATE TRIGGER products_fts_ai AFTER INSERT ON " + TABLE_PRODUCTS + " BEGIN " +
+                "INSERT INTO " + TABLE_PRODUCTS_FTS + "(docid, " + indexed + ") VALUES (new." + COL_ID + ", " + newValues + "); END");
     }
 
+    /**
+     * FTS5 external content over the same columns, ordered for the bm25 weights. prefix='2 3 4'
+     * keeps extra index entries for 2-4 character prefixes, so "pen*" is a direct lookup instead of
+     * a walk over every term starting with "pen". FTS5 deletes by old values, so all triggers run AFTER.
+     */
+    private static void createProductsFts5(SQLiteDatabase db) {
+        String indexed = COL_SKU + ", " + COL_NAME + ", " + COL_SEARCH_TOKENS + ", " + COL_CAT_TOKENS;
+        String oldValues = "old." + COL_SKU + ", old." + COL_NAME + ", old." + COL_SEARCH_TOKENS + ", old." + COL_CAT_TOKENS;
+        String newValues = "new." + COL_SKU + ", new." + COL_NAME + ", new." + COL_SEARCH_TOKENS + ", new." + COL_CAT_TOKENS;
+        String delete = "INSERT INTO " + TABLE_PRODUCTS_FTS + "(" + TABLE_PRODUCTS_FTS + ", rowid, " + indexed + ") " +
+                "VALUES ('delete', old." + COL_ID + ", " + oldValues + ");";
+        String insert = "INSERT INTO " + TABLE_PRODUCTS_FTS + "(rowid, " + indexed + ") VALUES (new." + COL_ID + ", " + newValues + ");";
+
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PRODUCTS_FTS + " USING fts5(" + indexed + ", " +
+                "content='" + TABLE_PRODUCTS + "', content_rowid='" + COL_ID + "', prefix='2 3 4')");
+        db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + "(" + TABLE_PRODUCTS_FTS + ", rank) VALUES ('rank', '" + FTS5_RANK + "')");
+        db.execSQL("CREATE TRIGGER products_fts_ad AFTER DELETE ON " + TABLE_PRODUCTS + " BEGIN " + delete + " END");
+        db.execSQL("CREATE TRIGGER products_fts_au AFTER UPDATE OF " + indexed + " ON " + TABLE_PRODUCTS + " BEGIN " +
+                delete + " " + insert + " END");
+        db.execSQL("CREATE TRIGGER products_fts_ai AFTER INSERT ON " + TABLE_PRODUCTS + " BEGIN " + insert + " END");
+    }
+
+    // Which engine onCreate() ended up with; decides the query syntax and ranking
+    private boolean isFts5(SQLiteDatabase db) {
+        if (fts5 == null) {
+            Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE name = ?", new String[]{TABLE_PRODUCTS_FTS});
+            fts5 = cursor.moveToFirst() && cursor.getString(0).toLowerCase(Locale.US).contains("fts5");
+            cursor.close();
+        }
+        return fts5;
+    }
+
+    // --- MIGRATIONS ---
+
+    /**
+     * Steps the schema forward one version at a time, keeping the catalog, the downloaded-image
+     * paths and the sync bookkeeping, so an app update doesn't send reps through a full re-sync.
+     * SQLiteOpenHelper runs this inside one transaction: a failing step leaves the old database.
+     * The search index only holds tokens derived from products, so steps that touch it just ask
+     * for it to be rebuilt once at the end. Anything older than 21 predates this and is recreated.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < MIN_MIGRATABLE_VERSION) {
+            dropAllTables(db);
+            onCreate(db);
+            return;
+        }
+
+        boolean rebuildSearchIndex = false;
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            rebuildSearchIndex |= migrateTo(db, version);
+        }
+        if (rebuildSearchIndex) rebuildProductsFts(db);
+    }
+
+    // Returns true when the step needs products_fts rebuilt
+    private static boolean migrateTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 22:
+                // Content hashes: rows start without one, so the first sync rewrites each product once
+                db.execSQL("ALTER TABLE " + TABLE_VARIATIONS + " ADD COLUMN " + COL_VAR_HASH + " INTEGER");
+                db.execSQL("CREATE TABLE " + TABLE_PRODUCT_STATE + "(product_id INTEGER PRIMARY KEY, content_hash INTEGER, image_hash INTEGER)");
+                return false;
+            case 23:
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_SEEN_IDS + "(id INTEGER PRIMARY KEY)");
+                return false;
+            case 24:
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_variations_parent ON " + TABLE_VARIATIONS + "(" + COL_PARENT_ID + ")");
+                return false;
+            case 25:
+                // Fresh installs of 23 and 24 never got sync_seen_ids
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_SEEN_IDS + "(id INTEGER PRIMARY KEY)");
+                createSyncRunsTable(db);
+                return false;
+            case 26:
+                migrateProductsToRegularTable(db);
+                return true;
+            case 27:
+                // FTS4 -> FTS5 where available: the index is rebuilt with whatever the device supports
+                return true;
+            case 28:
+                migrateCategoryTokensToTable(db);
+                return true;
+            case 29:
+                migrateImagesToTable(db);
+                return false;
+            case 30:
+                migratePriceColumns(db);
+                return false;
+            case 31:
+                // Starts empty: until a page is written again, a 304 for it is parsed and hash-checked
+                createSyncPagesTable(db);
+                return false;
+            case 32:
+                db.execSQL("DROP INDEX IF EXISTS idx_products_name");
+                createNameIndex(db);
+                db.execSQL("UPDATE " + TABLE_PRODUCT_CATEGORIES + " SET " + COL_PC_PRODUCT_NAME + " = '' WHERE " +
+                        COL_PC_PRODUCT_NAME + " IS NULL");
+                return false;
+            case 33:
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_SEEN_IDS);
+                return false;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    // 26: the fts4 "products" table becomes a regular table, product_state is folded into it.
+    // Table and indexes are spelled out as they were in 26, later steps change them from there
+    private static void migrateProductsToRegularTable(SQLiteDatabase db) {
+        String temp = TABLE_PRODUCTS + "_new";
+        db.execSQL("CREATE TABLE " + temp + "(" + COL_ID + " INTEGER PRIMARY KEY, " + COL_NAME + " TEXT, " +
+                COL_PRICE + " TEXT, " + COL_WHOLESALE_PRICE + " TEXT, " + COL_DESC + " TEXT, " +
+                COL_LOCAL_PATHS + " TEXT, " + COL_SKU + " TEXT, " + COL_WEB_URLS + " TEXT, " + COL_TYPE + " TEXT, " +
+                COL_CAT_TOKENS + " TEXT, " + COL_DISPLAY_PRICE + " TEXT, " + COL_NEEDS_IMG_SYNC + " INTEGER NOT NULL DEFAULT 1, " +
+                COL_SEARCH_TOKENS + " TEXT, " + COL_CONTENT_HASH + " INTEGER, " + COL_IMAGE_HASH + " INTEGER)");
+        db.execSQL("INSERT INTO " + temp + "(" + COL_ID + ", " + COL_NAME + ", " + COL_PRICE + ", " +
+                COL_WHOLESALE_PRICE + ", " + COL_DESC + ", " + COL_LOCAL_PATHS + ", " + COL_SKU + ", " +
+                COL_WEB_URLS + ", " + COL_TYPE + ", " + COL_CAT_TOKENS + ", " + COL_DISPLAY_PRICE + ", " +
+                COL_NEEDS_IMG_SYNC + ", " + COL_SEARCH_TOKENS + ", " + COL_CONTENT_HASH + ", " + COL_IMAGE_HASH + ")" +
+                " SELECT p.docid, p." + COL_NAME + ", p." + COL_PRICE + ", p." + COL_WHOLESALE_PRICE + ", p." + COL_DESC + ", " +
+                "p." + COL_LOCAL_PATHS + ", p." + COL_SKU + ", p." + COL_WEB_URLS + ", p." + COL_TYPE + ", " +
+                "p." + COL_CAT_TOKENS + ", p." + COL_DISPLAY_PRICE + ", " +
+                // the FTS table stored the flag as text "0" / "1"
+                "CASE WHEN p." + COL_NEEDS_IMG_SYNC + " = '0' THEN 0 ELSE 1 END, " +
+                "p." + COL_SEARCH_TOKENS + ", s.content_hash, s.image_hash" +
+                " FROM " + TABLE_PRODUCTS + " p LEFT JOIN " + TABLE_PRODUCT_STATE + " s ON s.product_id = p.docid");
+        db.execSQL("DROP TABLE " + TABLE_PRODUCTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCT_STATE);
+        db.execSQL("ALTER TABLE " + temp + " RENAME TO " + TABLE_PRODUCTS);
+        db.execSQL("CREATE INDEX idx_products_name ON " + TABLE_PRODUCTS + "(" + COL_NAME + " COLLATE NOCASE)");
+        db.execSQL("CREATE INDEX idx_products_needs_img ON " + TABLE_PRODUCTS + "(" + COL_NEEDS_IMG_SYNC + ") WHERE " + COL_NEEDS_IMG_SYNC + " = 1");
+    }
+
+    // 28: category membership moves from the "category<id>" search tokens into product_categories.
+    // The index is dropped first so the token rewrite doesn't go through the FTS triggers row by row
+    private static void migrateCategoryTokensToTable(SQLiteDatabase db) {
+        dropProductsFts(db);
+        createProductCategoriesTable(db);
+
+        SQLiteStatement link = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PRODUCT_CATEGORIES + "(" +
+                COL_PC_PRODUCT_ID + ", " + COL_PC_CATEGORY_ID + ", " + COL_PC_PRODUCT_NAME + ") VALUES (?, ?, ?)");
+        SQLiteStatement tokens = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " +
+                COL_CAT_TOKENS + " = ?, " + COL_SEARCH_TOKENS + " = ? WHERE " + COL_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + COL_ID + ", " + COL_NAME + ", " + COL_SKU + ", " + COL_CAT_TOKENS +
+                " FROM " + TABLE_PRODUCTS, null);
+        try {
+            while (cursor.moveToNext()) {
+                int id = cursor.getInt(0);
+                String name = cursor.getString(1);
+                String catTokens = cursor.getString(3);
+                if (catTokens == null) continue;
+
+                Matcher m = CATEGORY_ID_TOKEN.matcher(catTokens);
+                while (m.find()) {
+                    link.clearBindings();
+                    link.bindLong(1, id);
+                    link.bindLong(2, Long.parseLong(m.group(1)));
+                    bindText(link, 3, name);
+                    link.executeInsert();
+                }
+
+                String names = m.replaceAll("").trim().replaceAll("\\s+", " ");
+                tokens.clearBindings();
+                bindText(tokens, 1, names);
+                bindText(tokens, 2, SearchUtils.generateSearchTokens(name, cursor.getString(2), names));
+                tokens.bindLong(3, id);
+                tokens.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            link.close();
+            tokens.close();
+        }
+    }
+
+    // 29: the "###"-joined url / path strings become product_images rows. The old paths list only
+    // held the images that downloaded, so each one is matched to its position by ImageWorker's file name.
+    // Everything else starts pending: the old flag can't tell "never tried" from "failed", and
+    // STATE_FAILED would keep ImageWorker off the image until its URL changes
+    private static void migrateImagesToTable(SQLiteDatabase db) {
+        createProductImagesTable(db);
+
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PRODUCT_IMAGES + "(" +
+                COL_IMG_PRODUCT_ID + ", " + COL_IMG_POSITION + ", " + COL_IMG_WEB_URL + ", " + COL_IMG_LOCAL_PATH + ", " +
+                COL_IMG_BYTES + ", " + COL_IMG_STATE + ") VALUES (?, ?, ?, ?, ?, ?)");
+        Cursor cursor = db.rawQuery("SELECT " + COL_ID + ", " + COL_WEB_URLS + ", " + COL_LOCAL_PATHS +
+                " FROM " + TABLE_PRODUCTS, null);
+        try {
+            while (cursor.moveToNext()) {
+                int id = cursor.getInt(0);
+                String urls = cursor.getString(1);
+                if (TextUtils.isEmpty(urls)) continue;
+
+                Map<String, String> pathsByName = new HashMap<>();
+                String paths = cursor.getString(2);
+                if (!TextUtils.isEmpty(paths)) {
+                    for (String path : paths.split("###")) pathsByName.put(new File(path).getName(), path);
+                }
+
+                String[] split = urls.split("###");
+                for (int position = 0; position < split.length; position++) {
+                    ProductImage image = new ProductImage(id, position, split[position], null, 0, ProductImage.STATE_PENDING);
+                    String path = pathsByName.get(image.getFileName());
+                    long bytes = path != null ? new File(path).length() : 0;
+                    if (bytes > 0) image.markDownloaded(path, bytes);
+                    bindImage(insert, image);
+                    insert.executeInsert();
+                }
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+        }
+
+        // Not in the FTS index, so this doesn't go through its triggers
+        db.execSQL("UPDATE " + TABLE_PRODUCTS + " SET " + COL_WEB_URLS + " = NULL, " + COL_LOCAL_PATHS + " = NULL");
+        db.execSQL("DROP INDEX IF EXISTS idx_products_needs_img");
+    }
+
+    // 30: parses every stored price label once. Price columns aren't indexed by FTS, so no reindex
+    private static void migratePriceColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COL_PRICE_MIN + " INTEGER");
+        db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COL_PRICE_MAX + " INTEGER");
+
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " +
+                COL_PRICE_MIN + " = ?, " + COL_PRICE_MAX + " = ? WHERE " + COL_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + COL_ID + ", " + COL_DISPLAY_PRICE + " FROM " + TABLE_PRODUCTS, null);
+        try {
+            while (cursor.moveToNext()) {
+                long[] range = Prices.parseRange(cursor.getString(1));
+                if (range == null) continue;
+                update.bindLong(1, range[0]);
+                update.bindLong(2, range[1]);
+                update.bindLong(3, cursor.getInt(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            update.close();
+        }
+        createPriceIndex(db);
+    }
+
+    private static void bindImage(SQLiteStatement stmt, ProductImage image) {
+        stmt.clearBindings();
+        stmt.bindLong(1, image.getProductId());
+        stmt.bindLong(2, image.getPosition());
+        bindText(stmt, 3, image.getWebUrl());
+        bindText(stmt, 4, image.getLocalPath());
+        stmt.bindLong(5, image.getBytes());
+        stmt.bindLong(6, image.getState());
+    }
+
+    private static void dropProductsFts(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS products_fts_ai");
+        db.execSQL("DROP TRIGGER IF EXISTS products_fts_au");
+        db.execSQL("DROP TRIGGER IF EXISTS products_fts_bu");
+        db.execSQL("DROP TRIGGER IF EXISTS products_fts_bd");
+        db.execSQL("DROP TRIGGER IF EXISTS products_fts_ad");
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS_FTS);
+    }
+
+    // Recreates the search index (engine picked like onCreate) and refills it from the stored columns
+    private void rebuildProductsFts(SQLiteDatabase db) {
+        dropProductsFts(db);
+        createProductsFts(db);
+        db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + "(" + TABLE_PRODUCTS_FTS + ") VALUES ('rebuild')");
+        fts5 = null;
+    }
+
+    private static void dropAllTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS_FTS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_VARIATIONS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATEGORIES);
-        onCreate(db);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCT_CATEGORIES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCT_IMAGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCT_STATE);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_SEEN_IDS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_RUNS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_PAGES);
     }
 
     @Override
@@ -112,98 +621,310 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     // --- PRODUCTS ---
-    public void upsertProduct(Product p) {
+    // Writes a whole page in one transaction with compiled statements.
+    // Rows whose content hash is unchanged are skipped entirely, so re-syncing an unchanged
+    // catalog doesn't reindex FTS or queue image work. Returns the number of rows written.
+    // Image rows are only touched when the product's image list changed, and then only the
+    // positions whose URL changed go back to pending; downloaded ones keep their file.
+    // No INSERT OR REPLACE here: the implicit delete would bypass the FTS delete trigger.
+    public int upsertProducts(List<Product> products) {
+        if (products == null || products.isEmpty()) return 0;
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_DOCID, p.getId());
-        values.put(COL_NAME, p.getName());
-        values.put(COL_PRICE, p.getPrice());
-        values.put(COL_WHOLESALE_PRICE, p.getWholesalePrice());
-        values.put(COL_DESC, p.getDescription());
-        values.put(COL_SKU, p.getSku() != null ? p.getSku() : "");
-
-        String pathsToSave = p.getLocalPathsString();
-        if (TextUtils.isEmpty(pathsToSave)) {
-            Cursor cursor = db.rawQuery("SELECT " + COL_LOCAL_PATHS + " FROM " + TABLE_PRODUCTS + " WHERE docid=?", new String[]{String.valueOf(p.getId())});
-            if (cursor.moveToFirst()) {
-                String existing = cursor.getString(0);
-                if (!TextUtils.isEmpty(existing)) {
-                    pathsToSave = existing;
+        int written = 0;
+        db.beginTransaction();
+        SQLiteStatement insert = null;
+        SQLiteStatement update = null;
+        SQLiteStatement unlink = null;
+        SQLiteStatement link = null;
+        SQLiteStatement trimImages = null;
+        SQLiteStatement addImage = null;
+        SQLiteStatement resetImage = null;
+        try {
+            List<Integer> ids = new ArrayList<>(products.size());
+            for (Product p : products) ids.add(p.getId());
+            Map<Integer, ExistingRow> existingRows = queryExistingProducts(db, ids);
+
+            // Same parameter order in both, so one binding routine serves both (id goes last)
+            String[] columns = {COL_NAME, COL_PRICE, COL_WHOLESALE_PRICE, COL_DESC, COL_SKU,
+                    COL_TYPE, COL_CAT_TOKENS, COL_DISPLAY_PRICE, COL_SEARCH_TOKENS,
+                    COL_CONTENT_HASH, COL_IMAGE_HASH, COL_PRICE_MIN, COL_PRICE_MAX};
+            insert = db.compileStatement("INSERT INTO " + TABLE_PRODUCTS + "(" + TextUtils.join(", ", columns) +
+                    ", " + COL_ID + ") VALUES (?" + TextUtils.join("", Collections.nCopies(columns.length, ", ?")) + ")");
+            update = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " + TextUtils.join(" = ?, ", columns) +
+                    " = ? WHERE " + COL_ID + " = ?");
+            unlink = db.compileStatement("DELETE FROM " + TABLE_PRODUCT_CATEGORIES + " WHERE " + COL_PC_PRODUCT_ID + " = ?");
+            link = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PRODUCT_CATEGORIES + "(" +
+                    COL_PC_PRODUCT_ID + ", " + COL_PC_CATEGORY_ID + ", " + COL_PC_PRODUCT_NAME + ") VALUES (?, ?, ?)");
+            trimImages = db.compileStatement("DELETE FROM " + TABLE_PRODUCT_IMAGES + " WHERE " +
+                    COL_IMG_PRODUCT_ID + " = ? AND " + COL_IMG_POSITION + " >= ?");
+            addImage = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PRODUCT_IMAGES + "(" +
+                    COL_IMG_PRODUCT_ID + ", " + COL_IMG_POSITION + ", " + COL_IMG_WEB_URL + ") VALUES (?, ?, ?)");
+            // A new URL, or a failed one that might work now
+            resetImage = db.compileStatement("UPDATE " + TABLE_PRODUCT_IMAGES + " SET " + COL_IMG_WEB_URL + " = ?, " +
+                    COL_IMG_LOCAL_PATH + " = NULL, " + COL_IMG_BYTES + " = NULL, " + COL_IMG_STATE + " = " + ProductImage.STATE_PENDING +
+                    " WHERE " + COL_IMG_PRODUCT_ID + " = ? AND " + COL_IMG_POSITION + " = ?" +
+                    " AND (" + COL_IMG_WEB_URL + " IS NOT ? OR " + COL_IMG_STATE + " = " + ProductImage.STATE_FAILED + ")");
+
+            for (Product p : products) {
+                long contentHash = p.getContentHash();
+                long imageHash = p.getImageHash();
+                ExistingRow existing = existingRows.get(p.getId());
+                if (existing != null && existing.hasState && existing.contentHash == contentHash) {
+                    continue; // Nothing changed
+                }
+
+                // Only a new product or a changed image list needs ImageWorker
+                boolean imagesChanged = existing == null || !existing.hasState || existing.imageHash != imageHash;
+
+                String wholesale = p.getWholesalePrice();
+                String catTokens = p.getCategoryTokens();
+                String displayPrice = p.getDisplayPrice() != null ? p.getDisplayPrice() : wholesale;
+                long[] priceRange = Prices.parseRange(displayPrice);
+
+                SQLiteStatement stmt = existing != null ? update : insert;
+                stmt.clearBindings();
+                bindText(stmt, 1, p.getName());
+                bindText(stmt, 2, p.getPrice());
+                bindText(stmt, 3, wholesale);
+                bindText(stmt, 4, p.getDescription());
+                bindText(stmt, 5, p.getSku() != null ? p.getSku() : "");
+                bindText(stmt, 6, p.getType());
+                bindText(stmt, 7, catTokens);
+                bindText(stmt, 8, displayPrice);
+                bindText(stmt, 9, SearchUtils.generateSearchTokens(p.getName(), p.getSku(), catTokens));
+                stmt.bindLong(10, contentHash);
+                stmt.bindLong(11, imageHash);
+                if (priceRange != null) {
+                    stmt.bindLong(12, priceRange[0]);
+                    stmt.bindLong(13, priceRange[1]);
+                } // else left NULL by clearBindings()
+                stmt.bindLong(14, p.getId());
+                if (existing != null) stmt.executeUpdateDelete();
+                else stmt.executeInsert();
+
+                if (imagesChanged) {
+                    List<String> urls = p.getWebUrls();
+                    trimImages.bindLong(1, p.getId());
+                    trimImages.bindLong(2, urls.size());
+                    trimImages.executeUpdateDelete();
+                    for (int position = 0; position < urls.size(); position++) {
+                        addImage.bindLong(1, p.getId());
+                        addImage.bindLong(2, position);
+                        bindText(addImage, 3, urls.get(position));
+                        addImage.executeInsert();
+
+                        bindText(resetImage, 1, urls.get(position));
+                        resetImage.bindLong(2, p.getId());
+                        resetImage.bindLong(3, position);
+                        bindText(resetImage, 4, urls.get(position));
+                        resetImage.executeUpdateDelete();
+                    }
                 }
+
+                // Products read back from the DB don't know their categories: links stay as they are
+                List<Integer> categoryIds = p.getCategoryIds();
+                if (categoryIds != null) {
+                    unlink.bindLong(1, p.getId());
+                    unlink.executeUpdateDelete();
+                    for (int categoryId : categoryIds) {
+                        link.clearBindings();
+                        link.bindLong(1, p.getId());
+                        link.bindLong(2, categoryId);
+                        link.bindString(3, p.getName() != null ? p.getName() : ""); // sort key, never NULL
+                        link.executeInsert();
+                    }
+                }
+                written++;
             }
-            cursor.close();
+            db.setTransactionSuccessful();
+        } finally {
+            if (insert != null) insert.close();
+            if (update != null) update.close();
+            if (unlink != null) unlink.close();
+            if (link != null) link.close();
+            if (trimImages != null) trimImages.close();
+            if (addImage != null) addImage.close();
+            if (resetImage != null) resetImage.close();
+            db.endTransaction();
         }
-        values.put(COL_LOCAL_PATHS, pathsToSave);
+        return written;
+    }
 
-        values.put(COL_WEB_URLS, p.getWebUrlsString());
-        values.put(COL_TYPE, p.getType());
-        values.put(COL_CAT_TOKENS, p.getCategoryTokens());
-        values.put(COL_DISPLAY_PRICE, p.getDisplayPrice() != null ? p.getDisplayPrice() : p.getWholesalePrice());
+    /**
+     * Recomputes display_price ("min" or "min - max") and price_min / price_max for the given
+     * variable products from the variations already stored. MIN/MAX come from a single grouped
+     * query; rows whose range didn't change are not touched.
+     */
+    public void updateDisplayPriceRanges(List<Integer> parentIds) {
+        if (parentIds == null || parentIds.isEmpty()) return;
+        SQLiteDatabase db = this.getWritableDatabase();
+        // Same rule as the old Double.parseDouble() loop: strip commas, skip anything non-numeric
+        String numeric = "REPLACE(TRIM(v." + COL_VAR_PRICE + "), ',', '')";
+        String sql = "SELECT v." + COL_PARENT_ID + ", MIN(CAST(" + numeric + " AS REAL)), MAX(CAST(" + numeric + " AS REAL)), " +
+                "p." + COL_DISPLAY_PRICE +
+                " FROM " + TABLE_VARIATIONS + " v LEFT JOIN " + TABLE_PRODUCTS + " p ON p." + COL_ID + " = v." + COL_PARENT_ID +
+                " WHERE v." + COL_PARENT_ID + " IN (" + TextUtils.join(", ", parentIds) + ")" +
+                " AND " + numeric + " != '' AND " + numeric + " NOT GLOB '*[^0-9.]*'" +
+                " GROUP BY v." + COL_PARENT_ID;
 
-        String fuzzyTokens = SearchUtils.generateSearchTokens(p.getName(), p.getSku(), p.getCategoryTokens());
-        values.put(COL_SEARCH_TOKENS, fuzzyTokens);
+        db.beginTransaction();
+        SQLiteStatement update = null;
+        Cursor cursor = null;
+        try {
+            update = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " + COL_DISPLAY_PRICE + " = ?, " +
+                    COL_PRICE_MIN + " = ?, " + COL_PRICE_MAX + " = ? WHERE " + COL_ID + " = ?");
+            cursor = db.rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                double min = cursor.getDouble(1);
+                double max = cursor.getDouble(2);
+                String range = (Math.abs(max - min) < 0.01)
+                        ? String.format(Locale.US, "%.2f", min)
+                        : String.format(Locale.US, "%.2f - %.2f", min, max);
+                if (range.equals(cursor.getString(3))) continue;
 
-        values.put(COL_NEEDS_IMG_SYNC, "1");
-        db.replace(TABLE_PRODUCTS, null, values);
+                long[] minor = Prices.parseRange(range);
+                update.bindString(1, range);
+                update.bindLong(2, minor[0]);
+                update.bindLong(3, minor[1]);
+                update.bindLong(4, cursor.getInt(0));
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (cursor != null) cursor.close();
+            if (update != null) update.close();
+            db.endTransaction();
+        }
     }
 
-    public void updateLocalImagePaths(int productId, String serializedPaths) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_LOCAL_PATHS, serializedPaths);
-        db.update(TABLE_PRODUCTS, values, "docid = ?", new String[]{String.valueOf(productId)});
+    // --- PRODUCT IMAGES ---
+    // ImageWorker's queue, in gallery order per product
+    public List<ProductImage> getPendingProductImages() {
+        return queryImages(COL_IMG_STATE + " = " + ProductImage.STATE_PENDING, null);
     }
 
-    public void updateProductDisplayPrice(int productId, String priceRange) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_DISPLAY_PRICE, priceRange);
-        db.update(TABLE_PRODUCTS, values, "docid=?", new String[]{String.valueOf(productId)});
+    // The whole gallery of one product, for the detail sheet
+    public List<ProductImage> getProductImages(int productId) {
+        return queryImages(COL_IMG_PRODUCT_ID + " = ?", new String[]{String.valueOf(productId)});
     }
 
-    public List<Product> getProductsNeedingImageSync() {
-        List<Product> list = new ArrayList<>();
+    private List<ProductImage> queryImages(String where, String[] args) {
+        List<ProductImage> list = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT docid, * FROM " + TABLE_PRODUCTS + " WHERE " + COL_NEEDS_IMG_SYNC + "='1'", null);
-        if (cursor.moveToFirst()) {
-            do { list.add(cursorToProduct(cursor)); } while (cursor.moveToNext());
+        Cursor cursor = db.rawQuery("SELECT " + COL_IMG_PRODUCT_ID + ", " + COL_IMG_POSITION + ", " + COL_IMG_WEB_URL + ", " +
+                COL_IMG_LOCAL_PATH + ", " + COL_IMG_BYTES + ", " + COL_IMG_STATE + " FROM " + TABLE_PRODUCT_IMAGES +
+                " WHERE " + where + " ORDER BY " + COL_IMG_PRODUCT_ID + ", " + COL_IMG_POSITION, args);
+        while (cursor.moveToNext()) {
+            list.add(new ProductImage(cursor.getInt(0), cursor.getInt(1), cursor.getString(2),
+                    cursor.getString(3), cursor.getLong(4), cursor.getInt(5)));
         }
         cursor.close();
         return list;
     }
 
-    public void markProductImageSynced(int id) {
+    // Download results from ImageWorker, a batch per transaction. The URL check drops a result
+    // whose image was replaced by a sync in the meantime
+    public void updateProductImages(List<ProductImage> images) {
+        if (images == null || images.isEmpty()) return;
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_NEEDS_IMG_SYNC, "0");
-        db.update(TABLE_PRODUCTS, values, "docid=?", new String[]{String.valueOf(id)});
+        db.beginTransaction();
+        SQLiteStatement update = null;
+        try {
+            update = db.compileStatement("UPDATE " + TABLE_PRODUCT_IMAGES + " SET " + COL_IMG_LOCAL_PATH + " = ?, " +
+                    COL_IMG_BYTES + " = ?, " + COL_IMG_STATE + " = ? WHERE " + COL_IMG_PRODUCT_ID + " = ? AND " +
+                    COL_IMG_POSITION + " = ? AND " + COL_IMG_WEB_URL + " = ?");
+            for (ProductImage image : images) {
+                update.clearBindings();
+                bindText(update, 1, image.getLocalPath());
+                update.bindLong(2, image.getBytes());
+                update.bindLong(3, image.getState());
+                update.bindLong(4, image.getProductId());
+                update.bindLong(5, image.getPosition());
+                bindText(update, 6, image.getWebUrl());
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (update != null) update.close();
+            db.endTransaction();
+        }
+    }
+
+    // Snapshot import: image files that came with the catalog, for the rows its products created.
+    // No URL check, the files were taken for the URLs in the same snapshot
+    public void markProductImagesDownloaded(List<ProductImage> images) {
+        if (images == null || images.isEmpty()) return;
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement update = null;
+        try {
+            update = db.compileStatement("UPDATE " + TABLE_PRODUCT_IMAGES + " SET " + COL_IMG_LOCAL_PATH + " = ?, " +
+                    COL_IMG_BYTES + " = ?, " + COL_IMG_STATE + " = " + ProductImage.STATE_DOWNLOADED + " WHERE " +
+                    COL_IMG_PRODUCT_ID + " = ? AND " + COL_IMG_POSITION + " = ?");
+            for (ProductImage image : images) {
+                update.clearBindings();
+                bindText(update, 1, image.getLocalPath());
+                update.bindLong(2, image.getBytes());
+                update.bindLong(3, image.getProductId());
+                update.bindLong(4, image.getPosition());
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (update != null) update.close();
+            db.endTransaction();
+        }
     }
 
     // --- VARIATIONS ---
-    public void upsertVariation(Variation v) {
+    public int upsertVariations(List<Variation> variations) {
+        if (variations == null || variations.isEmpty()) return 0;
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_VAR_ID, v.getId());
-        values.put(COL_PARENT_ID, v.getParentId());
-        values.put(COL_VAR_PRICE, v.getPrice());
-        values.put(COL_VAR_ATTR, v.getAttributesString());
-        values.put(COL_VAR_IMG_WEB, v.getWebImageUrl());
-
-        String pathToSave = v.getLocalImagePath();
-        if (TextUtils.isEmpty(pathToSave)) {
-            Cursor cursor = db.rawQuery("SELECT " + COL_VAR_IMG_LOCAL + " FROM " + TABLE_VARIATIONS + " WHERE " + COL_VAR_ID + "=?", new String[]{String.valueOf(v.getId())});
-            if (cursor.moveToFirst()) {
-                String existing = cursor.getString(0);
-                if (!TextUtils.isEmpty(existing)) {
-                    pathToSave = existing;
+        int written = 0;
+        db.beginTransaction();
+        SQLiteStatement insert = null;
+        try {
+            List<Integer> ids = new ArrayList<>(variations.size());
+            for (Variation v : variations) ids.add(v.getId());
+            Map<Integer, ExistingRow> existingRows = queryExistingVariations(db, ids);
+
+            insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_VARIATIONS + "(" +
+                    COL_VAR_ID + ", " + COL_PARENT_ID + ", " + COL_VAR_PRICE + ", " + COL_VAR_ATTR + ", " +
+                    COL_VAR_IMG_WEB + ", " + COL_VAR_IMG_LOCAL + ", " + COL_VAR_NEEDS_IMG_SYNC + ", " + COL_VAR_HASH +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+
+            for (Variation v : variations) {
+                long contentHash = v.getContentHash();
+                ExistingRow existing = existingRows.get(v.getId());
+                if (existing != null && existing.hasState && existing.contentHash == contentHash) {
+                    continue;
                 }
+
+                String pathToSave = v.getLocalImagePath();
+                if (TextUtils.isEmpty(pathToSave) && existing != null && !TextUtils.isEmpty(existing.localPaths)) {
+                    pathToSave = existing.localPaths;
+                }
+                String webImage = v.getWebImageUrl();
+                boolean imageChanged = existing == null || !TextUtils.equals(existing.webImage, webImage);
+
+                insert.clearBindings();
+                insert.bindLong(1, v.getId());
+                insert.bindLong(2, v.getParentId());
+                bindText(insert, 3, v.getPrice());
+                bindText(insert, 4, v.getAttributesString());
+                bindText(insert, 5, webImage);
+                bindText(insert, 6, pathToSave);
+                insert.bindLong(7, imageChanged ? 1 : existing.needsImgSync);
+                insert.bindLong(8, contentHash);
+                insert.executeInsert();
+                written++;
             }
-            cursor.close();
+            db.setTransactionSuccessful();
+        } finally {
+            if (insert != null) insert.close();
+            db.endTransaction();
         }
-        values.put(COL_VAR_IMG_LOCAL, pathToSave);
-
-        values.put(COL_VAR_NEEDS_IMG_SYNC, 1);
-        db.replace(TABLE_VARIATIONS, null, values);
+        return written;
     }
 
     public void updateVariationImagePath(int varId, String path) {
@@ -240,27 +961,42 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     // --- CATEGORIES ---
-    public void upsertCategory(Category c) {
+    public void upsertCategories(List<Category> categories) {
+        if (categories == null || categories.isEmpty()) return;
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_CAT_ID, c.getId());
-        values.put(COL_CAT_NAME, c.getName());
-        values.put(COL_CAT_SLUG, c.getSlug());
-        values.put(COL_CAT_COUNT, c.getCount());
-        db.replace(TABLE_CATEGORIES, null, values);
+        db.beginTransaction();
+        SQLiteStatement insert = null;
+        try {
+            insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_CATEGORIES + "(" +
+                    COL_CAT_ID + ", " + COL_CAT_NAME + ", " + COL_CAT_SLUG + ", " + COL_CAT_COUNT +
+                    ") VALUES (?, ?, ?, ?)");
+            for (Category c : categories) {
+                insert.clearBindings();
+                insert.bindLong(1, c.getId());
+                bindText(insert, 2, c.getName());
+                bindText(insert, 3, c.getSlug());
+                insert.bindLong(4, c.getCount());
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (insert != null) insert.close();
+            db.endTransaction();
+        }
     }
 
+    // Counts what is actually in the local catalog: the server's cat_count includes products
+    // this app never stores (drafts, private) and lags behind deletions
     public List<Category> getAllCategories() {
         List<Category> list = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_CATEGORIES + " ORDER BY " + COL_CAT_NAME + " ASC", null);
+        Cursor cursor = db.rawQuery("SELECT c." + COL_CAT_ID + ", c." + COL_CAT_NAME + ", c." + COL_CAT_SLUG +
+                ", COUNT(pc." + COL_PC_PRODUCT_ID + ") FROM " + TABLE_CATEGORIES + " c" +
+                " LEFT JOIN " + TABLE_PRODUCT_CATEGORIES + " pc ON pc." + COL_PC_CATEGORY_ID + " = c." + COL_CAT_ID +
+                " GROUP BY c." + COL_CAT_ID + " ORDER BY c." + COL_CAT_NAME + " ASC", null);
         if (cursor.moveToFirst()) {
             do {
-                int id = cursor.getInt(cursor.getColumnIndexOrThrow(COL_CAT_ID));
-                String name = cursor.getString(cursor.getColumnIndexOrThrow(COL_CAT_NAME));
-                String slug = cursor.getString(cursor.getColumnIndexOrThrow(COL_CAT_SLUG));
-                int count = cursor.getInt(cursor.getColumnIndexOrThrow(COL_CAT_COUNT));
-                list.add(new Category(id, name, slug, count));
+                list.add(new Category(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3)));
             } while (cursor.moveToNext());
         }
         cursor.close();
@@ -268,92 +1004,223 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     // --- SEARCH (ENHANCED) ---
-    public List<Product> searchProducts(String userQuery, int categoryId) {
-        List<Product> list = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
 
-        try {
-            // 1. Normalize Query
-            String fuzzyQuery = SearchUtils.normalizeQuery(userQuery);
+    /**
+     * Where the next page of a search starts. Name and price orders page by the sort key of the
+     * last row handed out (keyset), so every page is an index seek no matter how far down the list
+     * is. Relevance order has no key SQLite can seek on and pages by offset instead.
+     */
+    public static class PageKey {
+        final String name;
+        final Long price;       // null once a price sort has reached the unpriced rows
+        final int id;
+        final int offset;
+        final boolean relaxed;  // the typed query matched nothing strictly and fell back to OR
 
-            // FIX: Replace explicit " AND " with implicit " " to prevent FTS4 literal match issues
-            fuzzyQuery = fuzzyQuery.replace(" AND ", " ");
+        PageKey(String name, Long price, int id, int offset, boolean relaxed) {
+            this.name = name;
+            this.price = price;
+            this.id = id;
+            this.offset = offset;
+            this.relaxed = relaxed;
+        }
+    }
 
-            StringBuilder matchQuery = new StringBuilder();
+    public static class Page {
+        public final List<ProductSummary> products;
+        public final PageKey next; // null on the last page
 
-            // 2. Build Strict Query (Implicit AND)
-            if (categoryId > 0) {
-                matchQuery.append("category").append(categoryId);
-                if (!fuzzyQuery.isEmpty()) {
-                    matchQuery.append(" "); // Implicit AND
-                }
-            }
+        Page(List<ProductSummary> products, PageKey next) {
+            this.products = products;
+            this.next = next;
+        }
+    }
 
-            if (!fuzzyQuery.isEmpty()) {
-                matchQuery.append(fuzzyQuery);
-            }
+    /**
+     * One page of results for the filter, starting after {@code after} (null for the first page).
+     * Cancelling the signal aborts the query with OperationCanceledException.
+     */
+    public Page searchPage(SearchFilter filter, PageKey after, int limit, CancellationSignal signal) {
+        SQLiteDatabase db = this.getReadableDatabase();
 
-            String orderBy = " ORDER BY " + COL_NAME + " COLLATE NOCASE ASC";
+        // 1. Normalize Query: "(pencel* OR pncl*) AND (hb*)"
+        String fuzzyQuery = SearchUtils.normalizeQuery(filter.query);
+        if (fuzzyQuery.isEmpty()) {
+            return readPage(db, listingQuery(filter), after, limit, false, signal);
+        }
 
-            // 3. Execute Strict Search
-            if (matchQuery.length() > 0) {
-                String sql = "SELECT docid, * FROM " + TABLE_PRODUCTS + " WHERE " + TABLE_PRODUCTS + " MATCH ?" + orderBy;
-                cursor = db.rawQuery(sql, new String[]{matchQuery.toString()});
+        // 2. Strict Search: every word must match
+        boolean fts5 = isFts5(db);
+        boolean relaxed = after != null && after.relaxed;
+        if (!relaxed) {
+            Page page = readPage(db, ftsQuery(filter, matchExpression(fts5, fuzzyQuery), fts5), after, limit, false, signal);
+            if (after != null || !page.products.isEmpty() || !fuzzyQuery.contains(") AND (")) return page;
+        }
 
-                if (cursor.moveToFirst()) {
-                    do {
-                        list.add(cursorToProduct(cursor));
-                    } while (cursor.moveToNext());
-                }
-                cursor.close();
-            } else {
-                // Empty query fallback
-                cursor = db.rawQuery("SELECT docid, * FROM " + TABLE_PRODUCTS + orderBy + " LIMIT 100", null);
-                if (cursor.moveToFirst()) {
-                    do { list.add(cursorToProduct(cursor)); } while (cursor.moveToNext());
-                }
-                cursor.close();
-                return list;
-            }
+        // 3. FALLBACK: Relaxed Search (OR Logic)
+        // If strict search failed to find results, try to find matches for ANY of the words.
+        // Example: User types "Blue Water Bottle" -> Strict fails -> Relaxed finds "Water Bottle"
+        // The category and price range (if any) stay strict.
+        String relaxedQuery = "(" + fuzzyQuery.replace(") AND (", ") OR (") + ")";
+        return readPage(db, ftsQuery(filter, matchExpression(fts5, relaxedQuery), fts5), after, limit, true, signal);
+    }
 
-            // 4. FALLBACK: Relaxed Search (OR Logic)
-            // If strict search failed to find results, try to find matches for ANY of the words.
-            // Example: User types "Blue Water Bottle" -> Strict fails -> Relaxed finds "Water Bottle"
-            if (list.isEmpty() && !fuzzyQuery.isEmpty() && fuzzyQuery.contains(") (")) {
-
-                String relaxedQuery;
-                if (categoryId > 0) {
-                    // Enforce category strictly, but relax the user terms
-                    // Format: categoryID ((A) OR (B))
-                    String userPartRelaxed = "(" + fuzzyQuery.replace(") (", ") OR (") + ")";
-                    relaxedQuery = "category" + categoryId + " " + userPartRelaxed;
-                } else {
-                    relaxedQuery = fuzzyQuery.replace(") (", ") OR (");
-                }
+    // FTS5 needs an explicit AND next to a parenthesised group; FTS4's standard syntax wants
+    // implicit AND (a literal "AND" would be matched as a word there)
+    private static String matchExpression(boolean fts5, String terms) {
+        return fts5 ? terms : terms.replace(" AND ", " ");
+    }
 
-                String sql = "SELECT docid, * FROM " + TABLE_PRODUCTS + " WHERE " + TABLE_PRODUCTS + " MATCH ?" + orderBy;
-                cursor = db.rawQuery(sql, new String[]{relaxedQuery});
+    // The parts of a search statement that don't depend on the page
+    private static class SearchQuery {
+        String from;
+        String where = "1";
+        final List<String> args = new ArrayList<>();
+        int sort;
+        boolean priceRange;
+        boolean relevance;   // FTS5 rank order
+        String nameKey;      // name order: column expression (NOCASE) ...
+        String idKey;        // ... and its tie-breaker
+    }
 
-                if (cursor.moveToFirst()) {
-                    do {
-                        list.add(cursorToProduct(cursor));
-                    } while (cursor.moveToNext());
-                }
-                cursor.close();
+    // No typed query: the whole catalog, or one category walked off the join table's index
+    private static SearchQuery listingQuery(SearchFilter filter) {
+        SearchQuery q = newQuery(filter);
+        if (filter.categoryId > 0) {
+            q.from = TABLE_PRODUCT_CATEGORIES + " pc JOIN " + TABLE_PRODUCTS + " p ON p." + COL_ID + " = pc." + COL_PC_PRODUCT_ID;
+            q.where += " AND pc." + COL_PC_CATEGORY_ID + " = " + filter.categoryId;
+            // Declared COLLATE NOCASE and written as "" for a missing name, so it needs no IFNULL
+            // (which would keep the browse index from serving the sort)
+            q.nameKey = "pc." + COL_PC_PRODUCT_NAME;
+            q.idKey = "pc." + COL_PC_PRODUCT_ID;
+        } else {
+            q.from = TABLE_PRODUCTS + " p";
+        }
+        return q;
+    }
+
+    private static SearchQuery ftsQuery(SearchFilter filter, String match, boolean fts5) {
+        SearchQuery q = newQuery(filter);
+        if (fts5) {
+            q.from = TABLE_PRODUCTS_FTS + " JOIN " + TABLE_PRODUCTS + " p ON p." + COL_ID + " = " + TABLE_PRODUCTS_FTS + ".rowid";
+            q.where += " AND " + TABLE_PRODUCTS_FTS + " MATCH ?";
+            // ORDER BY rank + LIMIT lets FTS5 keep only the best rows instead of sorting every hit
+            q.relevance = filter.sort == SearchFilter.SORT_DEFAULT;
+        } else {
+            // No relevance (FTS4 has no bm25 here): alphabetical
+            q.from = TABLE_PRODUCTS + " p";
+            q.where += " AND p." + COL_ID + " IN (SELECT rowid FROM " + TABLE_PRODUCTS_FTS + " WHERE " + TABLE_PRODUCTS_FTS + " MATCH ?)";
+        }
+        q.args.add(match);
+        if (filter.categoryId > 0) {
+            q.where += " AND p." + COL_ID + " IN (SELECT " + COL_PC_PRODUCT_ID + " FROM " + TABLE_PRODUCT_CATEGORIES +
+                    " WHERE " + COL_PC_CATEGORY_ID + " = " + filter.categoryId + ")";
+        }
+        return q;
+    }
+
+    // A variable product matches a price range when any of its prices is in it. Unpriced products never do
+    private static SearchQuery newQuery(SearchFilter filter) {
+        SearchQuery q = new SearchQuery();
+        if (filter.maxPrice != SearchFilter.NO_LIMIT) q.where += " AND p." + COL_PRICE_MIN + " <= " + filter.maxPrice;
+        if (filter.minPrice != SearchFilter.NO_LIMIT) q.where += " AND p." + COL_PRICE_MAX + " >= " + filter.minPrice;
+        q.sort = filter.sort;
+        q.priceRange = filter.hasPriceRange();
+        q.nameKey = "IFNULL(p." + COL_NAME + ", '') COLLATE NOCASE"; // matches idx_products_name
+        q.idKey = "p." + COL_ID;
+        return q;
+    }
+
+    /**
+     * Runs one page of the query in its sort order. Price order is by the "from" price with
+     * unpriced products after all priced ones: the priced part walks idx_products_price, and a page
+     * that runs out of priced rows is topped up from the unpriced ones in id order.
+     */
+    private Page readPage(SQLiteDatabase db, SearchQuery q, PageKey after, int limit, boolean relaxed, CancellationSignal signal) {
+        List<ProductSummary> out = new ArrayList<>();
+        String where = q.where;
+        List<String> args = new ArrayList<>(q.args);
+        String order;
+        int offset = 0;
+
+        if (q.relevance) {
+            order = TABLE_PRODUCTS_FTS + ".rank";
+            if (after != null) offset = after.offset;
+        } else if (q.sort == SearchFilter.SORT_DEFAULT) {
+            order = q.nameKey + ", " + q.idKey;
+            if (after != null) {
+                // (name, id) > (?, ?) spelled out: row values need SQLite 3.15
+                String name = after.name != null ? after.name : "";
+                where += " AND " + q.nameKey + " >= ? AND (" + q.nameKey + " > ? OR " + q.idKey + " > " + after.id + ")";
+                args.add(name);
+                args.add(name);
+            }
+        } else {
+            boolean desc = q.sort == SearchFilter.SORT_PRICE_HIGH;
+            if (after != null && after.price == null) {
+                // Already in the unpriced tail
+                return readUnpriced(db, q, after.id, limit, relaxed, out, signal);
             }
+            String price = "p." + COL_PRICE_MIN;
+            order = price + (desc ? " DESC, p." + COL_ID + " DESC" : ", p." + COL_ID);
+            where += " AND " + price + " IS NOT NULL";
+            if (after != null) {
+                where += desc
+                        ? " AND " + price + " <= " + after.price + " AND (" + price + " < " + after.price + " OR p." + COL_ID + " < " + after.id + ")"
+                        : " AND " + price + " >= " + after.price + " AND (" + price + " > " + after.price + " OR p." + COL_ID + " > " + after.id + ")";
+            }
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            if (cursor != null && !cursor.isClosed()) cursor.close();
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM " + q.from + FIRST_IMAGE_JOIN + " WHERE " + where +
+                " ORDER BY " + order + " LIMIT " + limit + (offset > 0 ? " OFFSET " + offset : "");
+        PageKey last = readSummaries(db.rawQuery(sql, args.toArray(new String[0]), signal), out, offset, relaxed);
+
+        if (q.sort != SearchFilter.SORT_DEFAULT && !q.priceRange && out.size() < limit) {
+            return readUnpriced(db, q, 0, limit, relaxed, out, signal);
         }
+        return new Page(out, out.size() < limit ? null : last);
+    }
 
-        return list;
+    // Unpriced rows of a price sort (only without a price range, which excludes them), in id order
+    private Page readUnpriced(SQLiteDatabase db, SearchQuery q, int afterId, int limit, boolean relaxed, List<ProductSummary> out, CancellationSignal signal) {
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM " + q.from + FIRST_IMAGE_JOIN + " WHERE " + q.where +
+                " AND p." + COL_PRICE_MIN + " IS NULL AND p." + COL_ID + " > " + afterId +
+                " ORDER BY p." + COL_ID + " LIMIT " + (limit - out.size());
+        PageKey last = readSummaries(db.rawQuery(sql, q.args.toArray(new String[0]), signal), out, 0, relaxed);
+        return new Page(out, out.size() < limit ? null : last);
+    }
+
+    // Column indexes are looked up once per cursor, not per row. Returns the key after the last row read (null if none)
+    private PageKey readSummaries(Cursor cursor, List<ProductSummary> out, int offset, boolean relaxed) {
+        PageKey last = null;
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(COL_ID);
+            int nameIndex = cursor.getColumnIndexOrThrow(COL_NAME);
+            int priceIndex = cursor.getColumnIndexOrThrow(COL_PRICE_MIN);
+            int labelIndex = cursor.getColumnIndexOrThrow("price_label");
+            int urlIndex = cursor.getColumnIndexOrThrow("first_image_url");
+            int pathIndex = cursor.getColumnIndexOrThrow("first_image_path");
+            int read = 0;
+            while (cursor.moveToNext()) {
+                out.add(new ProductSummary(cursor.getInt(idIndex), cursor.getString(nameIndex),
+                        cursor.getString(labelIndex), cursor.getString(urlIndex), cursor.getString(pathIndex)));
+                read++;
+            }
+            if (cursor.moveToLast()) {
+                last = new PageKey(cursor.getString(nameIndex),
+                        cursor.isNull(priceIndex) ? null : cursor.getLong(priceIndex),
+                        cursor.getInt(idIndex), offset + read, relaxed);
+            }
+        } finally {
+            cursor.close();
+        }
+        return last;
     }
 
     public Product getProductById(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT docid, * FROM " + TABLE_PRODUCTS + " WHERE docid=?", new String[]{String.valueOf(id)});
+        Cursor cursor = db.rawQuery("SELECT " + PRODUCT_COLUMNS + " FROM " + TABLE_PRODUCTS + " p" + FIRST_IMAGE_JOIN +
+                " WHERE p." + COL_ID + " = ?", new String[]{String.valueOf(id)});
         Product p = null;
         if (cursor.moveToFirst()) p = cursorToProduct(cursor);
         cursor.close();
@@ -387,11 +1254,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return count;
     }
 
+    // Products with at least one downloaded image, counted off idx_product_images_state
     public int getOfflineReadyCount() {
         SQLiteDatabase db = this.getReadableDatabase();
-        String sql = "SELECT COUNT(*) FROM " + TABLE_PRODUCTS +
-                " WHERE " + COL_LOCAL_PATHS + " IS NOT NULL " +
-                " AND " + COL_LOCAL_PATHS + " != ''";
+        String sql = "SELECT COUNT(DISTINCT " + COL_IMG_PRODUCT_ID + ") FROM " + TABLE_PRODUCT_IMAGES +
+                " WHERE " + COL_IMG_STATE + " = " + ProductImage.STATE_DOWNLOADED;
         Cursor cursor = db.rawQuery(sql, null);
         int count = 0;
         if (cursor.moveToFirst()) count = cursor.getInt(0);
@@ -399,35 +1266,230 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return count;
     }
 
-    public List<Integer> getAllLocalProductIds() {
-        List<Integer> ids = new ArrayList<>();
+    // Sorted ascending, for SortedIds.minus()
+    public int[] getAllLocalProductIds() {
+        return queryIds("SELECT " + COL_ID + " FROM " + TABLE_PRODUCTS + " ORDER BY " + COL_ID);
+    }
+
+    public int[] getAllCategoryIds() {
+        return queryIds("SELECT " + COL_CAT_ID + " FROM " + TABLE_CATEGORIES + " ORDER BY " + COL_CAT_ID);
+    }
+
+    private int[] queryIds(String sql) {
+        SortedIds.Builder ids = new SortedIds.Builder();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT docid FROM " + TABLE_PRODUCTS, null);
-        if (cursor.moveToFirst()) { do { ids.add(cursor.getInt(0)); } while (cursor.moveToNext()); }
+        Cursor cursor = db.rawQuery(sql, null);
+        while (cursor.moveToNext()) ids.add(cursor.getInt(0));
         cursor.close();
-        return ids;
+        return ids.build();
+    }
+
+    // Deletes in chunks inside one transaction: IN lists stay small and a crash can't leave half a cleanup
+    public void deleteProducts(int[] idsToDelete) {
+        if (idsToDelete == null || idsToDelete.length == 0) return;
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int from = 0; from < idsToDelete.length; from += DELETE_CHUNK_SIZE) {
+                String args = joinIds(idsToDelete, from, Math.min(idsToDelete.length, from + DELETE_CHUNK_SIZE));
+                db.execSQL("DELETE FROM " + TABLE_PRODUCTS + " WHERE " + COL_ID + " IN (" + args + ")"); // trigger clears FTS
+                db.execSQL("DELETE FROM " + TABLE_VARIATIONS + " WHERE " + COL_PARENT_ID + " IN (" + args + ")");
+                db.execSQL("DELETE FROM " + TABLE_PRODUCT_CATEGORIES + " WHERE " + COL_PC_PRODUCT_ID + " IN (" + args + ")");
+                db.execSQL("DELETE FROM " + TABLE_PRODUCT_IMAGES + " WHERE " + COL_IMG_PRODUCT_ID + " IN (" + args + ")");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteCategories(int[] idsToDelete) {
+        if (idsToDelete == null || idsToDelete.length == 0) return;
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int from = 0; from < idsToDelete.length; from += DELETE_CHUNK_SIZE) {
+                String args = joinIds(idsToDelete, from, Math.min(idsToDelete.length, from + DELETE_CHUNK_SIZE));
+                db.execSQL("DELETE FROM " + TABLE_CATEGORIES + " WHERE " + COL_CAT_ID + " IN (" + args + ")");
+                db.execSQL("DELETE FROM " + TABLE_PRODUCT_CATEGORIES + " WHERE " + COL_PC_CATEGORY_ID + " IN (" + args + ")");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static String joinIds(int[] ids, int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) sb.append(", ");
+            sb.append(ids[i]);
+        }
+        return sb.toString();
+    }
+
+    // --- SYNC BOOKKEEPING ---
+    // Call inside the transaction that writes the page's rows
+    public void saveSyncPage(long urlHash, String validator) {
+        SQLiteStatement insert = this.getWritableDatabase().compileStatement("INSERT OR REPLACE INTO " + TABLE_SYNC_PAGES +
+                "(url_hash, validator, saved_at) VALUES (?, ?, ?)");
+        try {
+            insert.bindLong(1, urlHash);
+            insert.bindString(2, validator);
+            insert.bindLong(3, System.currentTimeMillis());
+            insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+    }
+
+    // True when the rows of the page at this URL were committed while it had this validator
+    public boolean isSyncPageStored(long urlHash, String validator) {
+        if (validator == null) return false;
+        Cursor cursor = this.getReadableDatabase().rawQuery("SELECT 1 FROM " + TABLE_SYNC_PAGES +
+                " WHERE url_hash = " + urlHash + " AND validator = ?", new String[]{validator});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Delta URLs carry their modified_after, so most rows are never looked up again
+    public void pruneSyncPages(long savedBefore) {
+        this.getWritableDatabase().execSQL("DELETE FROM " + TABLE_SYNC_PAGES + " WHERE saved_at < " + savedBefore);
     }
 
-    public void deleteProducts(List<Integer> idsToDelete) {
-        if (idsToDelete == null || idsToDelete.isEmpty()) return;
+    // --- SYNC TELEMETRY ---
+    public void insertSyncRun(SyncRun run) {
+        ContentValues values = new ContentValues();
+        values.put("worker", run.worker);
+        values.put("started_at", run.startedAt);
+        values.put("attempt", run.attempt);
+        values.put("outcome", run.outcome);
+        values.put("error", run.error);
+        values.put("duration_ms", run.durationMs);
+        values.put("snapshot_ms", run.snapshotMs);
+        values.put("products_ms", run.productsMs);
+        values.put("variations_ms", run.variationsMs);
+        values.put("categories_ms", run.categoriesMs);
+        values.put("zombies_ms", run.zombiesMs);
+        values.put("images_ms", run.imagesMs);
+        values.put("requests", run.requests);
+        values.put("bytes_in", run.bytesIn);
+        values.put("retries", run.retries);
+        values.put("cache_hits", run.cacheHits);
+        values.put("rows_written", run.rowsWritten);
+        values.put("rows_skipped", run.rowsSkipped);
+
         SQLiteDatabase db = this.getWritableDatabase();
-        String args = TextUtils.join(", ", idsToDelete);
-        db.execSQL("DELETE FROM " + TABLE_PRODUCTS + " WHERE docid IN (" + args + ")");
-        db.execSQL("DELETE FROM " + TABLE_VARIATIONS + " WHERE " + COL_PARENT_ID + " IN (" + args + ")");
+        db.beginTransaction();
+        try {
+            run.id = db.insert(TABLE_SYNC_RUNS, null, values);
+            db.execSQL("DELETE FROM " + TABLE_SYNC_RUNS + " WHERE id <= " + (run.id - MAX_SYNC_RUNS));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Newest first
+    public List<SyncRun> getRecentSyncRuns(int limit) {
+        List<SyncRun> list = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_SYNC_RUNS + " ORDER BY id DESC LIMIT " + limit, null);
+        while (cursor.moveToNext()) {
+            SyncRun run = new SyncRun();
+            run.id = cursor.getLong(cursor.getColumnIndexOrThrow("id"));
+            run.worker = cursor.getString(cursor.getColumnIndexOrThrow("worker"));
+            run.startedAt = cursor.getLong(cursor.getColumnIndexOrThrow("started_at"));
+            run.attempt = cursor.getInt(cursor.getColumnIndexOrThrow("attempt"));
+            run.outcome = cursor.getString(cursor.getColumnIndexOrThrow("outcome"));
+            run.error = cursor.getString(cursor.getColumnIndexOrThrow("error"));
+            run.durationMs = cursor.getLong(cursor.getColumnIndexOrThrow("duration_ms"));
+            run.snapshotMs = cursor.getLong(cursor.getColumnIndexOrThrow("snapshot_ms"));
+            run.productsMs = cursor.getLong(cursor.getColumnIndexOrThrow("products_ms"));
+            run.variationsMs = cursor.getLong(cursor.getColumnIndexOrThrow("variations_ms"));
+            run.categoriesMs = cursor.getLong(cursor.getColumnIndexOrThrow("categories_ms"));
+            run.zombiesMs = cursor.getLong(cursor.getColumnIndexOrThrow("zombies_ms"));
+            run.imagesMs = cursor.getLong(cursor.getColumnIndexOrThrow("images_ms"));
+            run.requests = cursor.getLong(cursor.getColumnIndexOrThrow("requests"));
+            run.bytesIn = cursor.getLong(cursor.getColumnIndexOrThrow("bytes_in"));
+            run.retries = cursor.getLong(cursor.getColumnIndexOrThrow("retries"));
+            run.cacheHits = cursor.getInt(cursor.getColumnIndexOrThrow("cache_hits"));
+            run.rowsWritten = cursor.getInt(cursor.getColumnIndexOrThrow("rows_written"));
+            run.rowsSkipped = cursor.getInt(cursor.getColumnIndexOrThrow("rows_skipped"));
+            list.add(run);
+        }
+        cursor.close();
+        return list;
+    }
+
+    // SQLiteStatement.bindString() throws on null, ContentValues didn't
+    private static void bindText(SQLiteStatement stmt, int index, String value) {
+        if (value == null) stmt.bindNull(index);
+        else stmt.bindString(index, value);
+    }
+
+    // What's already stored for a row, loaded once per batch
+    private static class ExistingRow {
+        String localPaths;
+        String webImage;
+        int needsImgSync;
+        boolean hasState;
+        long contentHash;
+        long imageHash;
+    }
+
+    private static Map<Integer, ExistingRow> queryExistingProducts(SQLiteDatabase db, List<Integer> ids) {
+        Map<Integer, ExistingRow> map = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT " + COL_ID + ", " + COL_CONTENT_HASH + ", " + COL_IMAGE_HASH +
+                " FROM " + TABLE_PRODUCTS + " WHERE " + COL_ID + " IN (" + TextUtils.join(", ", ids) + ")", null);
+        if (cursor.moveToFirst()) {
+            do {
+                ExistingRow row = new ExistingRow();
+                row.hasState = !cursor.isNull(1);
+                row.contentHash = cursor.getLong(1);
+                row.imageHash = cursor.getLong(2);
+                map.put(cursor.getInt(0), row);
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return map;
+    }
+
+    private static Map<Integer, ExistingRow> queryExistingVariations(SQLiteDatabase db, List<Integer> ids) {
+        Map<Integer, ExistingRow> map = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT " + COL_VAR_ID + ", " + COL_VAR_IMG_LOCAL + ", " + COL_VAR_IMG_WEB + ", " +
+                COL_VAR_NEEDS_IMG_SYNC + ", " + COL_VAR_HASH + " FROM " + TABLE_VARIATIONS +
+                " WHERE " + COL_VAR_ID + " IN (" + TextUtils.join(", ", ids) + ")", null);
+        if (cursor.moveToFirst()) {
+            do {
+                ExistingRow row = new ExistingRow();
+                row.localPaths = cursor.getString(1);
+                row.webImage = cursor.getString(2);
+                row.needsImgSync = cursor.getInt(3);
+                row.hasState = !cursor.isNull(4);
+                row.contentHash = cursor.getLong(4);
+                map.put(cursor.getInt(0), row);
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return map;
     }
 
     private Product cursorToProduct(Cursor cursor) {
-        int id = cursor.getInt(cursor.getColumnIndexOrThrow("docid"));
+        int id = cursor.getInt(cursor.getColumnIndexOrThrow(COL_ID));
         String name = cursor.getString(cursor.getColumnIndexOrThrow(COL_NAME));
         String price = cursor.getString(cursor.getColumnIndexOrThrow(COL_PRICE));
         String wholesale = cursor.getString(cursor.getColumnIndexOrThrow(COL_WHOLESALE_PRICE));
         String desc = cursor.getString(cursor.getColumnIndexOrThrow(COL_DESC));
         String sku = cursor.getString(cursor.getColumnIndexOrThrow(COL_SKU));
-        String localPaths = cursor.getString(cursor.getColumnIndexOrThrow(COL_LOCAL_PATHS));
-        String webUrls = cursor.getString(cursor.getColumnIndexOrThrow(COL_WEB_URLS));
         String type = cursor.getString(cursor.getColumnIndexOrThrow(COL_TYPE));
         String catTokens = cursor.getString(cursor.getColumnIndexOrThrow(COL_CAT_TOKENS));
         String displayPrice = cursor.getString(cursor.getColumnIndexOrThrow(COL_DISPLAY_PRICE));
-        return new Product(id, name, sku, price, desc, type, localPaths, wholesale, webUrls, catTokens, displayPrice);
+        String imageUrl = cursor.getString(cursor.getColumnIndexOrThrow("first_image_url"));
+        String imagePath = cursor.getString(cursor.getColumnIndexOrThrow("first_image_path"));
+        return new Product(id, name, sku, price, desc, type, wholesale, catTokens, displayPrice, imageUrl, imagePath);
     }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ public class HomeActivity extends AppCompatActivity {
 
         Button btnOpenCatalog = findViewById(R.id.btnOpenCatalog);
         Button btnCategories = findViewById(R.id.btnCategories); // Renamed
+        Button btnSyncHistory = findViewById(R.id.btnSyncHistory);
 
         // 1. Open Catalog (All Products)
         btnOpenCatalog.setOnClickListener(v -> {
@@ -28,5 +29,11 @@ public class HomeActivity extends AppCompatActivity {
             Intent intent = new Intent(HomeActivity.this, CategoryActivity.class);
             startActivity(intent);
         });
+
+        // 3. Sync telemetry (last runs + CSV export)
+        btnSyncHistory.setOnClickListener(v -> {
+            Intent intent = new Intent(HomeActivity.this, SyncHistoryActivity.class);
+            startActivity(intent);
+        });
     }
 }
\ No newline at end of file
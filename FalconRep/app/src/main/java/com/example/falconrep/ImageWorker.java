@@ -5,7 +5,7 @@ import android.app.NotificationManager;
 import android.content.Context;
 import android.content.pm.ServiceInfo;
 import android.os.Build;
-import android.text.TextUtils;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -14,34 +14,46 @@ import androidx.work.ForegroundInfo;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
-import com.example.falconrep.models.Product;
+import com.example.falconrep.models.ProductImage;
+import com.example.falconrep.models.SyncRun;
 import com.example.falconrep.models.Variation;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+
 public class ImageWorker extends Worker {
 
     private static final String TAG = "FalconImages";
     private static final String CHANNEL_ID = "falcon_img_sync_channel";
     private static final int NOTIFICATION_ID = 888;
-    // Folder name in Internal Storage
-    private static final String IMAGE_FOLDER_NAME = "falcon_catalog_images";
+    // Folder name in Internal Storage (SnapshotImporter unpacks bundled images here too)
+    static final String IMAGE_FOLDER_NAME = "falcon_catalog_images";
+    // Image results written back per transaction
+    private static final int STATE_BATCH_SIZE = 50;
 
     private final DatabaseHelper dbHelper;
     private final NotificationManager notificationManager;
     private final Context context;
+    private final OkHttpClient http;
+    private final TrafficMeter trafficMeter;
+    // Failed downloads in this run, for the sync_runs record
+    private int failedDownloads;
 
     public ImageWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
         this.context = context;
         dbHelper = new DatabaseHelper(context);
         notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        NetworkClient network = NetworkClient.get(context);
+        http = network.getDownloadClient();
+        trafficMeter = network.getTrafficMeter();
     }
 
     @NonNull
@@ -56,27 +68,35 @@ public class ImageWorker extends Worker {
             Log.d(TAG, "Created Image Directory: " + created + " at " + internalFolder.getAbsolutePath());
         }
 
-        List<Product> productsToSync = dbHelper.getProductsNeedingImageSync();
+        List<ProductImage> imagesToSync = dbHelper.getPendingProductImages();
         List<Variation> varsToSync = dbHelper.getVariationsNeedingImageSync();
 
-        int total = productsToSync.size() + varsToSync.size();
+        int total = imagesToSync.size() + varsToSync.size();
         if (total == 0) return Result.success();
 
         setForegroundAsync(createForegroundInfo("Preparing downloads...", 0, total));
+        SyncRun run = new SyncRun(SyncRun.WORKER_IMAGES, System.currentTimeMillis(), getRunAttemptCount());
+        long start = SystemClock.elapsedRealtime();
+        TrafficMeter.Snapshot trafficAtStart = trafficMeter.snapshot();
 
         int processed = 0;
 
-        // 1. Process Products
-        for (Product p : productsToSync) {
+        // 1. Process Product Images
+        // Results are flushed in batches; anything not flushed when we're stopped stays pending
+        List<ProductImage> done = new ArrayList<>();
+        for (ProductImage image : imagesToSync) {
             if (isStopped()) break;
-            processProduct(p, internalFolder);
-            // Mark as synced regardless of success to prevent infinite retry loops on bad URLs
-            // (Only reset flag if URL changes in SyncWorker)
-            dbHelper.markProductImageSynced(p.getId());
+            processImage(image, internalFolder);
+            done.add(image);
+            if (done.size() >= STATE_BATCH_SIZE) {
+                dbHelper.updateProductImages(done);
+                done.clear();
+            }
 
             processed++;
             updateNotification(processed, total);
         }
+        dbHelper.updateProductImages(done);
 
         // 2. Process Variations
         for (Variation v : varsToSync) {
@@ -88,42 +108,40 @@ public class ImageWorker extends Worker {
             updateNotification(processed, total);
         }
 
+        TrafficMeter.Snapshot traffic = trafficMeter.snapshot().since(trafficAtStart);
+        Log.d(TAG, "Image traffic: " + traffic);
+
+        run.outcome = SyncRun.OUTCOME_SUCCESS;
+        run.durationMs = SystemClock.elapsedRealtime() - start;
+        run.imagesMs = run.durationMs;
+        run.requests = traffic.requests;
+        run.bytesIn = traffic.bytesReceived;
+        // No retries to report: downloads don't go through RequestScheduler
+        run.rowsWritten = processed;
+        run.rowsSkipped = total - processed;
+        if (failedDownloads > 0) run.error = failedDownloads + " image downloads failed";
+        else if (isStopped()) run.error = "Stopped by the system";
+        SyncWorker.recordRun(dbHelper, run);
         return Result.success();
     }
 
-    private void processProduct(Product p, File directory) {
-        List<String> webUrls = p.getWebUrls();
-        if (webUrls.isEmpty()) return;
-
-        List<String> validLocalPaths = new ArrayList<>();
-        boolean dbNeedsUpdate = false;
-
-        for (int i = 0; i < webUrls.size(); i++) {
-            String url = webUrls.get(i);
-            String fileName = "prod_" + p.getId() + "_" + i + ".jpg";
+    private void processImage(ProductImage image, File directory) {
+        // Define specific file in our custom internal folder
+        File targetFile = new File(directory, image.getFileName());
 
-            // Define specific file in our custom internal folder
-            File targetFile = new File(directory, fileName);
-
-            if (targetFile.exists() && targetFile.length() > 0) {
-                // Already exists
-                validLocalPaths.add(targetFile.getAbsolutePath());
-                dbNeedsUpdate = true; // Ensure DB has this path
-            } else {
-                // Download
-                String savedPath = downloadFile(url, targetFile);
-                if (!savedPath.isEmpty()) {
-                    validLocalPaths.add(savedPath);
-                    dbNeedsUpdate = true;
-                }
-            }
+        // A pending row always downloads. The file name only says product + position, so a file
+        // already there may be the picture of the URL this position had before; it goes now rather
+        // than surviving a failed download. (Snapshot files are recorded as downloaded on import.)
+        if (targetFile.exists() && !targetFile.delete()) {
+            Log.w(TAG, "Could not delete old image " + targetFile.getAbsolutePath());
         }
 
-        // CRITICAL: Write the paths to DB so "Offline Ready Count" works
-        if (dbNeedsUpdate && !validLocalPaths.isEmpty()) {
-            String serializedPaths = TextUtils.join("###", validLocalPaths);
-            Log.d(TAG, "Updating Product " + p.getId() + " paths: " + serializedPaths);
-            dbHelper.updateLocalImagePaths(p.getId(), serializedPaths);
+        String savedPath = downloadFile(image.getWebUrl(), targetFile);
+        if (!savedPath.isEmpty()) {
+            image.markDownloaded(savedPath, targetFile.length());
+        } else {
+            // Failed images aren't retried until the URL changes, so a bad URL can't loop forever
+            image.markFailed();
         }
     }
 
@@ -146,32 +164,26 @@ public class ImageWorker extends Worker {
     }
 
     private String downloadFile(String urlStr, File targetFile) {
-        HttpURLConnection conn = null;
-        InputStream in = null;
-        FileOutputStream out = null;
+        Request request;
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setConnectTimeout(15000);
-            conn.setReadTimeout(15000);
-            conn.setRequestProperty("User-Agent", "FalconRep/1.0"); // Important for WooCommerce
-            conn.connect();
-
-            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                Log.e(TAG, "Server returned " + conn.getResponseCode() + " for " + urlStr);
+            request = new Request.Builder().url(urlStr).build();
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Bad image URL: " + urlStr);
+            return "";
+        }
+
+        // Shared client: keeps the TLS connection to the store open between images
+        try (Response response = http.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                Log.e(TAG, "Server returned " + response.code() + " for " + urlStr);
+                failedDownloads++;
                 return "";
             }
 
             // Write to the specific file in internal storage
-            in = conn.getInputStream();
-            out = new FileOutputStream(targetFile);
-
-            byte[] buf = new byte[4096];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
+            try (BufferedSink out = Okio.buffer(Okio.sink(targetFile))) {
+                out.writeAll(response.body().source());
             }
-            out.flush(); // Force write
 
             // Verify
             if (targetFile.exists() && targetFile.length() > 0) {
@@ -182,13 +194,10 @@ public class ImageWorker extends Worker {
             }
         } catch (Exception e) {
             Log.e(TAG, "Download Failed: " + e.getMessage());
+            failedDownloads++;
             // Cleanup corrupt file
             if (targetFile.exists()) targetFile.delete();
             return "";
-        } finally {
-            try { if (out != null) out.close(); } catch (Exception ignored) {}
-            try { if (in != null) in.close(); } catch (Exception ignored) {}
-            if (conn != null) conn.disconnect();
         }
     }
 
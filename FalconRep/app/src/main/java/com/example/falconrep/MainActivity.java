@@ -11,7 +11,9 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -24,12 +26,14 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy; // Import this
 import com.example.falconrep.models.Category;
-import com.example.falconrep.models.Product;
+import com.example.falconrep.models.ProductSummary;
+import com.example.falconrep.models.SearchFilter;
+import com.example.falconrep.utils.Prices;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -37,7 +41,7 @@ public class MainActivity extends AppCompatActivity {
     private ProductAdapter adapter;
     private CategoryAdapter catAdapter;
 
-    private List<Product> productList;
+    private List<ProductSummary> productList;
     private List<Category> categoryList;
 
     private DatabaseHelper dbHelper;
@@ -47,8 +51,12 @@ public class MainActivity extends AppCompatActivity {
     private Handler searchHandler = new Handler(Looper.getMainLooper());
     private Runnable searchRunnable;
 
-    private List<Product> sessionMasterList;
+    private ProductPager pager;
     private int selectedCategoryId = 0;
+    // Price range and sort from the filter dialog; query and category are filled in per search
+    private final SearchFilter priceFilter = new SearchFilter();
+    private static final int PREFETCH_DISTANCE = 20;
+    private TextView btnFilter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,12 +72,25 @@ public class MainActivity extends AppCompatActivity {
         searchView = findViewById(R.id.searchView);
         txtOfflineCount = findViewById(R.id.txtOfflineCount);
         txtLoadedCount = findViewById(R.id.txtLoadedCount);
+        btnFilter = findViewById(R.id.btnFilter);
+        btnFilter.setOnClickListener(v -> showFilterDialog());
 
-        recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
+        GridLayoutManager gridLayout = new GridLayoutManager(this, 2);
+        recyclerView.setLayoutManager(gridLayout);
         productList = new ArrayList<>();
         adapter = new ProductAdapter(productList);
         recyclerView.setAdapter(adapter);
 
+        pager = new ProductPager(dbHelper, this::onPageLoaded);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                // Ask for the next page while a few rows are still left to scroll through
+                if (dy > 0 && gridLayout.findLastVisibleItemPosition() >= productList.size() - PREFETCH_DISTANCE) {
+                    pager.loadMore();
+                }
+            }
+        });
+
         rvCategories.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
         categoryList = new ArrayList<>();
         catAdapter = new CategoryAdapter(categoryList);
@@ -112,32 +133,78 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void performSearch(String query) {
-        new Thread(() -> {
-            final List<Product> results;
+        SearchFilter filter = priceFilter.copy();
+        filter.query = query;
+        filter.categoryId = selectedCategoryId;
+        pager.load(filter);
+    }
 
-            if (selectedCategoryId > 0) {
-                results = dbHelper.searchProducts(query, selectedCategoryId);
-            } else {
-                if (query == null || query.trim().isEmpty()) {
-                    if (sessionMasterList == null || sessionMasterList.isEmpty()) {
-                        sessionMasterList = dbHelper.searchProducts("", 0);
-                        if (!sessionMasterList.isEmpty()) {
-                            Collections.shuffle(sessionMasterList);
-                        }
-                    }
-                    results = new ArrayList<>(sessionMasterList);
-                } else {
-                    results = dbHelper.searchProducts(query, 0);
-                }
-            }
+    private void onPageLoaded(List<ProductSummary> products, boolean first) {
+        if (first) {
+            productList.clear();
+            productList.addAll(products);
+            adapter.notifyDataSetChanged();
+            recyclerView.scrollToPosition(0);
+            updateStatsUI();
+        } else {
+            int start = productList.size();
+            productList.addAll(products);
+            adapter.notifyItemRangeInserted(start, products.size());
+        }
+    }
 
-            runOnUiThread(() -> {
-                productList.clear();
-                productList.addAll(results);
-                adapter.notifyDataSetChanged();
-                updateStatsUI();
-            });
-        }).start();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacksAndMessages(null);
+        pager.shutdown();
+    }
+
+    private void showFilterDialog() {
+        View view = LayoutInflater.from(this).inflate(R.layout.dialog_price_filter, null);
+        EditText etMin = view.findViewById(R.id.etMinPrice);
+        EditText etMax = view.findViewById(R.id.etMaxPrice);
+        RadioGroup rgSort = view.findViewById(R.id.rgSort);
+
+        if (priceFilter.minPrice != SearchFilter.NO_LIMIT) etMin.setText(formatRupees(priceFilter.minPrice));
+        if (priceFilter.maxPrice != SearchFilter.NO_LIMIT) etMax.setText(formatRupees(priceFilter.maxPrice));
+        if (priceFilter.sort == SearchFilter.SORT_PRICE_LOW) rgSort.check(R.id.rbSortPriceLow);
+        else if (priceFilter.sort == SearchFilter.SORT_PRICE_HIGH) rgSort.check(R.id.rbSortPriceHigh);
+        else rgSort.check(R.id.rbSortDefault);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Price & Sort")
+                .setView(view)
+                .setPositiveButton("Apply", (d, w) -> {
+                    // Empty or unreadable boxes mean "no limit"
+                    priceFilter.minPrice = Prices.parseAmount(etMin.getText().toString());
+                    priceFilter.maxPrice = Prices.parseAmount(etMax.getText().toString());
+                    int checked = rgSort.getCheckedRadioButtonId();
+                    priceFilter.sort = checked == R.id.rbSortPriceLow ? SearchFilter.SORT_PRICE_LOW
+                            : checked == R.id.rbSortPriceHigh ? SearchFilter.SORT_PRICE_HIGH
+                            : SearchFilter.SORT_DEFAULT;
+                    onFilterChanged();
+                })
+                .setNeutralButton("Clear", (d, w) -> {
+                    priceFilter.minPrice = SearchFilter.NO_LIMIT;
+                    priceFilter.maxPrice = SearchFilter.NO_LIMIT;
+                    priceFilter.sort = SearchFilter.SORT_DEFAULT;
+                    onFilterChanged();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void onFilterChanged() {
+        boolean active = priceFilter.hasPriceRange() || priceFilter.sort != SearchFilter.SORT_DEFAULT;
+        btnFilter.setText(active ? "Filter (on)" : "Filter");
+        performSearch(searchView.getQuery().toString());
+    }
+
+    private static String formatRupees(long minorUnits) {
+        return minorUnits % 100 == 0
+                ? String.valueOf(minorUnits / 100)
+                : String.format(Locale.US, "%.2f", minorUnits / 100.0);
     }
 
     private void updateStatsUI() {
@@ -196,21 +263,16 @@ public class MainActivity extends AppCompatActivity {
     }
 
     class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHolder> {
-        private List<Product> list;
-        public ProductAdapter(List<Product> list) { this.list = list; }
+        private List<ProductSummary> list;
+        public ProductAdapter(List<ProductSummary> list) { this.list = list; }
         @NonNull @Override public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
             View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_product, parent, false);
             return new ViewHolder(v);
         }
         @Override public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-            Product p = list.get(position);
+            ProductSummary p = list.get(position);
             holder.name.setText(Html.fromHtml(p.getName(), Html.FROM_HTML_MODE_LEGACY));
-
-            if (p.getDisplayPrice() != null && !p.getDisplayPrice().isEmpty()) {
-                holder.price.setText("Rs " + p.getDisplayPrice());
-            } else {
-                holder.price.setText("Rs " + p.getWholesalePrice());
-            }
+            holder.price.setText("Rs " + p.getPriceLabel());
 
             holder.itemView.setOnClickListener(v -> {
                 ProductDetailBottomSheet bottomSheet = ProductDetailBottomSheet.newInstance(p.getId());
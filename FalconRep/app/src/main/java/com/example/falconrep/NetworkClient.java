@@ -0,0 +1,163 @@
+package com.example.falconrep;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * The one HTTP stack of the app, shared by SyncWorker and ImageWorker.
+ * Both talk to falconstationery.com, so sharing the pool means image sync starts on
+ * connections the data sync already warmed up (no extra TLS handshakes), and on HTTP/2
+ * all requests to the host are multiplexed over a single connection.
+ *
+ * Gzip: OkHttp sends Accept-Encoding: gzip and unzips transparently as long as we
+ * don't set that header ourselves, so don't add it in an interceptor.
+ *
+ * API responses go through a disk cache. WordPress marks REST responses as
+ * uncacheable, so when the server sends an ETag or Last-Modified we rewrite that to
+ * "no-cache": OkHttp stores the page and revalidates it with If-None-Match /
+ * If-Modified-Since on the next request. A 304 then costs a few hundred bytes.
+ */
+public class NetworkClient {
+
+    public static final String BASE_URL = "https://falconstationery.com/wp-json/wc/v3/";
+    private static final String USER_AGENT = "FalconRep/1.0"; // WooCommerce / the WAF reject empty agents
+
+    // Enough for the product fetchers + variation workers + images running at the same time
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // Request scheduler: what the shared host copes with comfortably. The concurrency limit
+    // starts at the old fixed fetcher count and adapts between 1 and MAX_REQUESTS_PER_HOST.
+    private static final double REQUESTS_PER_SECOND = 6;
+    private static final int REQUEST_BURST = 6;
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final long LATENCY_TARGET_MS = 3000;
+    private static final String CACHE_DIR = "http";
+    private static final long CACHE_SIZE_BYTES = 20L * 1024 * 1024;
+
+    private static NetworkClient instance;
+    private static String baseUrl = BASE_URL;
+
+    private final OkHttpClient client;
+    private final OkHttpClient downloadClient;
+    private final WooCommerceAPI api;
+    private final TrafficMeter trafficMeter = new TrafficMeter();
+    private final RequestScheduler scheduler = new RequestScheduler(
+            REQUESTS_PER_SECOND, REQUEST_BURST, INITIAL_CONCURRENCY, MAX_REQUESTS_PER_HOST, LATENCY_TARGET_MS);
+
+    public static synchronized NetworkClient get(Context context) {
+        if (instance == null) instance = new NetworkClient(context.getApplicationContext(), baseUrl);
+        return instance;
+    }
+
+    /** Debug benchmark only: points the API at another server (workers created afterwards pick it up). */
+    public static synchronized void setBaseUrl(String url) {
+        baseUrl = url != null ? url : BASE_URL;
+        if (instance != null && instance.client.cache() != null) {
+            // Two Cache objects must never share the directory
+            try { instance.client.cache().close(); } catch (IOException ignored) {}
+        }
+        instance = null;
+    }
+
+    private NetworkClient(Context context, String baseUrl) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        // Request lines only, and nothing at all in release builds
+        HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+        logging.setLevel(BuildConfig.DEBUG ? HttpLoggingInterceptor.Level.BASIC : HttpLoggingInterceptor.Level.NONE);
+
+        ConnectionPool pool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+
+        client = baseBuilder(pool, dispatcher)
+                .connectTimeout(45, TimeUnit.SECONDS)
+                .readTimeout(45, TimeUnit.SECONDS)
+                .writeTimeout(45, TimeUnit.SECONDS)
+                .addInterceptor(scheduler) // application interceptor: may call proceed() more than once
+                .addInterceptor(logging)
+                .addNetworkInterceptor(NetworkClient::makeRevalidatable)
+                .addNetworkInterceptor(trafficMeter)
+                .cache(new Cache(new File(context.getCacheDir(), CACHE_DIR), CACHE_SIZE_BYTES))
+                .build();
+
+        // Same pool and dispatcher, but not the scheduler: the API's rate limit, retries and latency
+        // target are about the API, and slow image transfers would only drag its concurrency down.
+        // Images get one attempt with shorter timeouts; ImageWorker marks a failed one and moves on.
+        // No HTTP cache: downloads are kept as files by their callers, caching them would store everything twice.
+        downloadClient = baseBuilder(pool, dispatcher)
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .addInterceptor(logging)
+                .addNetworkInterceptor(trafficMeter)
+                .build();
+
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+        api = retrofit.create(WooCommerceAPI.class);
+    }
+
+    private static OkHttpClient.Builder baseBuilder(ConnectionPool pool, Dispatcher dispatcher) {
+        return new OkHttpClient.Builder()
+                .connectionPool(pool)
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addInterceptor(chain -> {
+                    Request request = chain.request().newBuilder()
+                            .header("User-Agent", USER_AGENT)
+                            .build();
+                    return chain.proceed(request);
+                });
+    }
+
+    // Network interceptor: lets the cache keep responses that can be revalidated
+    private static Response makeRevalidatable(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        if (!"GET".equals(request.method())) return response;
+        if (response.header("ETag") == null && response.header("Last-Modified") == null) return response;
+
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .removeHeader("Expires")
+                .header("Cache-Control", "no-cache")
+                .build();
+    }
+
+    /** True when the server answered 304 and the body came from the disk cache. */
+    public static boolean isNotModified(Response response) {
+        Response network = response.networkResponse();
+        return network != null && network.code() == 304 && response.cacheResponse() != null;
+    }
+
+    /** The response's ETag, else its Last-Modified; null when it has neither. */
+    public static String validatorOf(Response response) {
+        String etag = response.header("ETag");
+        return etag != null ? etag : response.header("Last-Modified");
+    }
+
+    public WooCommerceAPI getApi() { return api; }
+    // Images and other plain file downloads (catalog snapshot): shared pool, no HTTP cache, no RequestScheduler
+    public OkHttpClient getDownloadClient() { return downloadClient; }
+    public TrafficMeter getTrafficMeter() { return trafficMeter; }
+    public RequestScheduler getScheduler() { return scheduler; }
+}
@@ -0,0 +1,89 @@
+package com.example.falconrep;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Picks per_page for the next product request from what the last ones cost.
+ *
+ * A request takes roughly ttfb + items * bytesPerItem / throughput. We keep moving averages of
+ * the three and choose the size that should finish in {@code targetMs}: on fast Wi-Fi that is the
+ * WooCommerce maximum of 100, on a weak edge connection it shrinks so a page never gets close
+ * to the read timeout. The size changes by at most 2x per step so one odd sample can't swing it.
+ */
+public class PageSizer {
+
+    private static final double SMOOTHING = 0.3; // weight of the newest sample
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetMs;
+
+    // Guarded by "this"; 0 = no sample yet
+    private int size;
+    private double ttfbMs;
+    private double bytesPerMs;
+    private double bytesPerItem;
+
+    public PageSizer(int minSize, int maxSize, int initialSize, long targetMs) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetMs = targetMs;
+        this.size = initialSize;
+    }
+
+    public synchronized int nextSize() {
+        return size;
+    }
+
+    /**
+     * Called after a page was fully read.
+     * @param ttfbMs time from sending the request to the response headers
+     * @param transferMs time spent reading (and parsing) the body
+     */
+    public synchronized void record(int items, long bytes, long ttfbMs, long transferMs) {
+        if (items <= 0 || bytes <= 0) return;
+        this.ttfbMs = average(this.ttfbMs, ttfbMs);
+        this.bytesPerMs = average(bytesPerMs, bytes / (double) Math.max(1, transferMs));
+        this.bytesPerItem = average(bytesPerItem, bytes / (double) items);
+
+        double budgetMs = Math.max(targetMs - this.ttfbMs, targetMs / 4.0); // a slow server still gets a page
+        int ideal = (int) (budgetMs * bytesPerMs / bytesPerItem);
+        int next = Math.max(size / 2, Math.min(size * 2, ideal));
+        size = Math.max(minSize, Math.min(maxSize, next));
+    }
+
+    private static double average(double current, double sample) {
+        return current == 0 ? sample : current + SMOOTHING * (sample - current);
+    }
+
+    /** Wraps a body so the bytes actually read from it are added to {@code counter}. */
+    public static ResponseBody counting(ResponseBody body, AtomicLong counter) {
+        return ResponseBody.create(Okio.buffer(new CountingSource(body.source(), counter)),
+                body.contentType(), body.contentLength());
+    }
+
+    private static class CountingSource extends ForwardingSource {
+        private final AtomicLong counter;
+
+        CountingSource(Source delegate, AtomicLong counter) {
+            super(delegate);
+            this.counter = counter;
+        }
+
+        @Override
+        public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) counter.addAndGet(read);
+            return read;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import androidx.viewpager2.widget.ViewPager2;
 import com.bumptech.glide.Glide;
 // Removed DiskCacheStrategy import as we are using direct local storage
 import com.example.falconrep.models.Product;
+import com.example.falconrep.models.ProductImage;
 import com.example.falconrep.models.Variation;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
@@ -132,34 +133,28 @@ public class ProductDetailBottomSheet extends BottomSheetDialogFragment {
     private void setupImages(Product p, List<Variation> variations) {
         mainGalleryPaths.clear();
 
-        List<String> localPaths = p.getLocalPaths();
-        List<String> webUrls = p.getWebUrls();
-        int count = Math.max(localPaths.size(), webUrls.size());
+        List<ProductImage> images = dbHelper.getProductImages(p.getId());
+        File imageDir = new File(requireContext().getFilesDir(), ImageWorker.IMAGE_FOLDER_NAME);
 
-        for (int i = 0; i < count; i++) {
+        for (ProductImage image : images) {
             String path = null;
 
             // 1. Try DB Path
-            if (i < localPaths.size()) {
-                String potentialPath = localPaths.get(i);
-                if (isValidFile(potentialPath)) {
-                    path = potentialPath;
-                }
+            if (isValidFile(image.getLocalPath())) {
+                path = image.getLocalPath();
             }
 
             // 2. Try Predictive Local Path (Fallback if DB is outdated but file exists)
-            // Filename format matches ImageWorker: img_{id}_{index}.jpg
             if (path == null) {
-                String fileName = "img_" + p.getId() + "_" + i + ".jpg";
-                File fallbackFile = new File(requireContext().getFilesDir(), fileName);
+                File fallbackFile = new File(imageDir, image.getFileName());
                 if (fallbackFile.exists() && fallbackFile.length() > 0) {
                     path = fallbackFile.getAbsolutePath();
                 }
             }
 
             // 3. Fallback to Web URL
-            if (path == null && i < webUrls.size()) {
-                path = webUrls.get(i);
+            if (path == null) {
+                path = image.getWebUrl();
             }
 
             if (path != null) mainGalleryPaths.add(path);
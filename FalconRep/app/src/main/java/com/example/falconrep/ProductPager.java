@@ -0,0 +1,105 @@
+package com.example.falconrep;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.example.falconrep.models.ProductSummary;
+import com.example.falconrep.models.SearchFilter;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads search results a page at a time off the main thread. A new load() cancels whatever query
+ * is still running for the old filter, and pages from an older filter are never delivered.
+ * All methods are called on the main thread; the listener is called there too.
+ */
+public class ProductPager {
+
+    public static final int PAGE_SIZE = 60;
+
+    public interface Listener {
+        // first = the list should be replaced rather than appended to
+        void onPage(List<ProductSummary> products, boolean first);
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private SearchFilter filter;
+    private DatabaseHelper.PageKey next;
+    private boolean loading;
+    private boolean done = true;
+    private int generation;
+    private CancellationSignal inFlight;
+
+    public ProductPager(DatabaseHelper dbHelper, Listener listener) {
+        this.dbHelper = dbHelper;
+        this.listener = listener;
+    }
+
+    public void load(SearchFilter filter) {
+        cancel();
+        this.filter = filter;
+        this.next = null;
+        this.done = false;
+        fetch(true);
+    }
+
+    // Next page of the current filter, if there is one and it isn't already on its way.
+    // Also retries a page that failed (the first one too, while next is still null)
+    public void loadMore() {
+        if (loading || done || filter == null) return;
+        fetch(next == null);
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void cancel() {
+        generation++;
+        if (inFlight != null) inFlight.cancel();
+        inFlight = null;
+        loading = false;
+    }
+
+    private void fetch(boolean first) {
+        final int gen = generation;
+        final SearchFilter f = filter;
+        final DatabaseHelper.PageKey after = next;
+        final CancellationSignal signal = new CancellationSignal();
+        inFlight = signal;
+        loading = true;
+
+        executor.execute(() -> {
+            DatabaseHelper.Page page = null;
+            try {
+                if (!signal.isCanceled()) page = dbHelper.searchPage(f, after, PAGE_SIZE, signal);
+            } catch (OperationCanceledException e) {
+                // superseded by a newer filter
+            } catch (Exception e) {
+                Log.e("ProductPager", "Page load failed", e);
+            } finally {
+                // Whatever happened, this load is over: a failed page must not block the next loadMore()
+                final DatabaseHelper.Page result = page;
+                mainHandler.post(() -> {
+                    if (gen != generation) return;
+                    inFlight = null;
+                    loading = false;
+                    if (result == null) return;
+                    next = result.next;
+                    done = result.next == null;
+                    listener.onPage(result.products, first);
+                });
+            }
+        });
+    }
+}
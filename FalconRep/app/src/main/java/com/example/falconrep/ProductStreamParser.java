@@ -0,0 +1,212 @@
+package com.example.falconrep;
+
+import com.example.falconrep.models.Product;
+import com.example.falconrep.utils.SortedIds;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Reads a /products page straight off the wire with a JsonReader.
+ * Each product is handed to the sink as soon as its closing brace is read, and
+ * meta_data is trimmed to the wholesale price keys while parsing, so the huge
+ * plugin meta arrays never reach the heap.
+ */
+public class ProductStreamParser {
+
+    public interface Sink {
+        // Return false to stop reading the rest of the page
+        boolean accept(Product product) throws IOException;
+    }
+
+    // Marks a meta value that can never be a price (objects / arrays)
+    private static final Object NOT_A_PRICE = new Object();
+
+    /** Returns how many products were read before the page ended or the sink stopped us. */
+    public static int parse(ResponseBody body, Sink sink) throws IOException {
+        return parse(body.charStream(), sink);
+    }
+
+    /** Same for any JSON array of products (e.g. products.json in a catalog snapshot). Closes the reader. */
+    public static int parse(Reader in, Sink sink) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            int count = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Product product = readProduct(reader);
+                count++;
+                if (!sink.accept(product)) break;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Reads a page requested with _fields=id, adding each id to the builder. Returns how many were read. */
+    public static int parseIds(ResponseBody body, SortedIds.Builder ids) throws IOException {
+        JsonReader reader = new JsonReader(body.charStream());
+        try {
+            int count = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("id".equals(reader.nextName())) {
+                        ids.add(reader.nextInt());
+                        count++;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Product readProduct(JsonReader reader) throws IOException {
+        int id = 0;
+        String name = null, sku = null, price = null, description = null, type = null, modified = null;
+        List<Product.Image> images = null;
+        List<Product.MetaData> meta = null;
+        List<Product.CategoryStub> categories = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id": id = reader.nextInt(); break;
+                case "name": name = nextString(reader); break;
+                case "sku": sku = nextString(reader); break;
+                case "price": price = nextString(reader); break;
+                case "description": description = nextString(reader); break;
+                case "type": type = nextString(reader); break;
+                case "date_modified_gmt": modified = nextString(reader); break;
+                case "images": images = readImages(reader); break;
+                case "meta_data": meta = readPriceMeta(reader); break;
+                case "categories": categories = readCategories(reader); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Product(id, name, sku, price, description, type, modified, images, meta, categories);
+    }
+
+    private static List<Product.Image> readImages(JsonReader reader) throws IOException {
+        List<Product.Image> images = new ArrayList<>();
+        if (skipIfNull(reader)) return images;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String src = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("src".equals(reader.nextName())) src = nextString(reader);
+                else reader.skipValue();
+            }
+            reader.endObject();
+            if (src != null) images.add(new Product.Image(src));
+        }
+        reader.endArray();
+        return images;
+    }
+
+    private static List<Product.CategoryStub> readCategories(JsonReader reader) throws IOException {
+        List<Product.CategoryStub> categories = new ArrayList<>();
+        if (skipIfNull(reader)) return categories;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int catId = 0;
+            String catName = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("id".equals(field)) catId = reader.nextInt();
+                else if ("name".equals(field)) catName = nextString(reader);
+                else reader.skipValue();
+            }
+            reader.endObject();
+            categories.add(new Product.CategoryStub(catId, catName));
+        }
+        reader.endArray();
+        return categories;
+    }
+
+    // Keeps only the entries Product.getWholesalePrice() looks at
+    private static List<Product.MetaData> readPriceMeta(JsonReader reader) throws IOException {
+        List<Product.MetaData> meta = new ArrayList<>();
+        if (skipIfNull(reader)) return meta;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String key = null;
+            Object value = NOT_A_PRICE;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("key".equals(field)) {
+                    key = nextString(reader);
+                } else if ("value".equals(field)) {
+                    value = readScalar(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (value != NOT_A_PRICE && Product.isPriceMetaKey(key)) {
+                meta.add(new Product.MetaData(key, value));
+            }
+        }
+        reader.endArray();
+        return meta;
+    }
+
+    // Same types Gson would produce for an Object field, so String.valueOf() matches the old path
+    private static Object readScalar(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case STRING: return reader.nextString();
+            case NUMBER: return reader.nextDouble();
+            case BOOLEAN: return reader.nextBoolean();
+            case NULL: reader.nextNull(); return null;
+            default:
+                reader.skipValue();
+                return NOT_A_PRICE;
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static boolean skipIfNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.falconrep;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Sits in front of every API request and keeps parallel sync from overloading the store.
+ * (Image and snapshot downloads use NetworkClient's download client, which bypasses it.)
+ *
+ * - Token bucket: at most {@code ratePerSecond} requests start per second (short bursts allowed).
+ * - Adaptive concurrency (AIMD): the number of requests in flight grows by one per "window" of fast
+ *   responses and is halved on 429/5xx, timeouts or latency above the target.
+ *   A request holds its slot until its response body is closed, so on the streamed product and id
+ *   pages the limit bounds body transfers too. Latency is still measured to the response headers:
+ *   that is what the server's load shows up in, while body time grows with per_page (PageSizer).
+ * - Retries: 408/429/5xx and I/O errors are retried with exponential backoff and jitter.
+ *   A Retry-After header wins over the backoff and pauses every thread, not just this one.
+ *   (Timeouts are retried too; other interruptions, e.g. a cancelled worker, are not.)
+ *
+ * When the retries run out the last response is returned as-is; SyncWorker turns it into an
+ * IOException so WorkManager retries the run from the checkpoint instead of losing pages.
+ */
+public class RequestScheduler implements Interceptor {
+
+    private static final String TAG = "FalconNet";
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+    // Don't let a bogus Retry-After park the worker for hours
+    private static final long MAX_RETRY_AFTER_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private final double ratePerSecond;
+    private final int burst;
+    private final int maxConcurrency;
+    private final long latencyTargetMs;
+    // Process-wide, like TrafficMeter: workers diff it to report their own retries
+    private final AtomicLong retries = new AtomicLong();
+
+    // All state below is guarded by "this"
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilMs;
+    private double concurrencyLimit;
+    private int inFlight;
+    private long lastDecreaseNanos;
+
+    public RequestScheduler(double ratePerSecond, int burst, int initialConcurrency, int maxConcurrency, long latencyTargetMs) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxConcurrency = maxConcurrency;
+        this.latencyTargetMs = latencyTargetMs;
+        this.tokens = burst;
+        this.concurrencyLimit = initialConcurrency;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        for (int attempt = 1; ; attempt++) {
+            acquire();
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                release(System.nanoTime() - start, true);
+                if (attempt >= MAX_ATTEMPTS || (e instanceof InterruptedIOException && !isTimeout(e))
+                        || chain.call().isCanceled()) {
+                    throw e;
+                }
+                long delay = backoffMs(attempt);
+                Log.w(TAG, request.url().encodedPath() + " failed (" + e.getMessage() + "), retry " + attempt + " in " + delay + "ms");
+                retries.incrementAndGet();
+                sleep(delay);
+                continue;
+            }
+
+            long latency = System.nanoTime() - start;
+            boolean retryable = isRetryable(response.code());
+            if (!retryable || attempt >= MAX_ATTEMPTS) return releaseOnClose(response, latency, retryable);
+            release(latency, true);
+
+            long delay = retryAfterMs(response);
+            if (delay >= 0) {
+                pauseAll(delay);
+            } else {
+                delay = backoffMs(attempt);
+            }
+            Log.w(TAG, request.url().encodedPath() + " returned " + response.code() + ", retry " + attempt + " in " + delay + "ms");
+            response.close();
+            retries.incrementAndGet();
+            sleep(delay);
+        }
+    }
+
+    // Frees the slot when the caller closes the body (Retrofit does for buffered calls, SyncWorker
+    // for @Streaming ones), not when the headers arrive
+    private Response releaseOnClose(Response response, final long latencyNanos, final boolean overloaded) {
+        ResponseBody body = response.body();
+        if (body == null) {
+            release(latencyNanos, overloaded);
+            return response;
+        }
+        final AtomicBoolean released = new AtomicBoolean();
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) release(latencyNanos, overloaded);
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(source), body.contentType(), body.contentLength()))
+                .build();
+    }
+
+    public static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    // Blocks until the bucket has a token and a concurrency slot is free
+    private synchronized void acquire() throws InterruptedIOException {
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (now < pausedUntilMs) {
+                    wait(pausedUntilMs - now);
+                    continue;
+                }
+                if (inFlight >= (int) concurrencyLimit) {
+                    wait(); // release() notifies
+                    continue;
+                }
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    inFlight++;
+                    return;
+                }
+                wait(Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / ratePerSecond)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request slot");
+        }
+    }
+
+    private synchronized void release(long latencyNanos, boolean overloaded) {
+        inFlight--;
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        if (overloaded || latencyMs > latencyTargetMs) {
+            // Halve at most once per round trip, otherwise one bad burst collapses the limit to 1
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos > latencyNanos) {
+                concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+                lastDecreaseNanos = now;
+                Log.d(TAG, "Concurrency limit down to " + (int) concurrencyLimit + " (" + latencyMs + "ms)");
+            }
+        } else {
+            // +1 after a full window of good responses
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+        }
+        notifyAll();
+    }
+
+    private synchronized void pauseAll(long delayMs) {
+        pausedUntilMs = Math.max(pausedUntilMs, System.currentTimeMillis() + delayMs);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    // Exponential with jitter: random in [d/4, d], d = min(cap, base * 2^attempt).
+    // The floor keeps a retry storm from firing again immediately.
+    static long backoffMs(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling / 4, ceiling + 1);
+    }
+
+    // Retry-After is either delta-seconds or an HTTP date; -1 when absent or unreadable
+    static long retryAfterMs(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) return -1;
+        long delay;
+        try {
+            delay = TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            if (date == null) return -1;
+            delay = date.getTime() - System.currentTimeMillis();
+        }
+        return Math.max(0, Math.min(delay, MAX_RETRY_AFTER_MS));
+    }
+
+    private static boolean isTimeout(IOException e) {
+        return e instanceof SocketTimeoutException;
+    }
+
+    private static void sleep(long ms) throws InterruptedIOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during backoff");
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.falconrep;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.falconrep.models.Category;
+import com.example.falconrep.models.Product;
+import com.example.falconrep.models.ProductImage;
+import com.example.falconrep.models.Variation;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Bulk-loads a catalog snapshot so a fresh install doesn't have to crawl the whole store.
+ *
+ * A snapshot is a zip written by the snapshot-tool module:
+ *   manifest.json    {"format": 1, "created_at": "yyyy-MM-ddTHH:mm:ss"} (GMT, must be the first entry)
+ *   categories.json  array of categories, same shape as /products/categories
+ *   products.json    array of products, same shape as /products with WooCommerceAPI.PRODUCT_FIELDS
+ *   variations.json  array of variations with parent_id filled in
+ *   images/...       optional, named the way ImageWorker names its files
+ *
+ * Everything goes in through the normal upsert path inside one transaction, so a broken
+ * bundle leaves the database untouched. Afterwards LAST_SYNC_DATE is the snapshot time and
+ * the next SyncWorker run is an ordinary incremental sync.
+ */
+public class SnapshotImporter {
+
+    private static final String TAG = "FalconSnapshot";
+
+    public static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_MANIFEST = "manifest.json";
+    private static final String ENTRY_CATEGORIES = "categories.json";
+    private static final String ENTRY_PRODUCTS = "products.json";
+    private static final String ENTRY_VARIATIONS = "variations.json";
+    private static final String IMAGE_PREFIX = "images/";
+    // Only names ImageWorker would produce, which also keeps "../" entries out of our folder
+    private static final Pattern IMAGE_NAME = Pattern.compile("(prod|var)_\\d+_\\d+\\.jpg");
+    private static final Pattern PRODUCT_IMAGE_NAME = Pattern.compile("prod_(\\d+)_(\\d+)\\.jpg");
+
+    private static final int BATCH_SIZE = 500;
+
+    public interface ProgressListener {
+        void onProgress(String status);
+    }
+
+    public static class Summary {
+        public String createdAt;
+        public int categories;
+        public int products;
+        public int variations;
+        public int images;
+
+        @Override
+        public String toString() {
+            return products + " products, " + variations + " variations, " + categories
+                    + " categories, " + images + " images (snapshot of " + createdAt + ")";
+        }
+    }
+
+    // Manifest fields, read with Gson
+    private static class Manifest {
+        int format;
+        String created_at;
+    }
+
+    private final Context context;
+    private final DatabaseHelper dbHelper;
+    private final Gson gson = new Gson();
+
+    public SnapshotImporter(Context context, DatabaseHelper dbHelper) {
+        this.context = context.getApplicationContext();
+        this.dbHelper = dbHelper;
+    }
+
+    /** Downloads the bundle to the cache dir first, so a slow network doesn't hold the DB transaction open. */
+    public Summary importFromUrl(OkHttpClient client, String url, ProgressListener listener) throws IOException {
+        File temp = new File(context.getCacheDir(), "catalog-snapshot.zip");
+        try {
+            listener.onProgress("Downloading catalog snapshot...");
+            Request request = new Request.Builder().url(url).build();
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("HTTP " + response.code() + " for snapshot " + url);
+                }
+                try (BufferedSink out = Okio.buffer(Okio.sink(temp))) {
+                    out.writeAll(response.body().source());
+                }
+            }
+            try (InputStream in = new FileInputStream(temp)) {
+                return importBundle(in, listener);
+            }
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    public Summary importBundle(InputStream in, ProgressListener listener) throws IOException {
+        Summary summary = new Summary();
+        List<Integer> variableIds = new ArrayList<>();
+        List<ProductImage> productImages = new ArrayList<>();
+        File imageDir = new File(context.getFilesDir(), ImageWorker.IMAGE_FOLDER_NAME);
+
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in));
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (summary.createdAt == null && !ENTRY_MANIFEST.equals(name)) {
+                    throw new IOException("Not a catalog snapshot: " + ENTRY_MANIFEST + " must come first");
+                }
+
+                Reader reader = new InputStreamReader(new EntryStream(zip), "UTF-8");
+                if (ENTRY_MANIFEST.equals(name)) {
+                    summary.createdAt = readManifest(reader);
+                } else if (ENTRY_CATEGORIES.equals(name)) {
+                    listener.onProgress("Importing categories...");
+                    summary.categories = importCategories(reader);
+                } else if (ENTRY_PRODUCTS.equals(name)) {
+                    summary.products = importProducts(reader, variableIds, listener);
+                } else if (ENTRY_VARIATIONS.equals(name)) {
+                    summary.variations = importVariations(reader, listener);
+                } else if (name.startsWith(IMAGE_PREFIX) && !entry.isDirectory()) {
+                    if (extractImage(zip, name.substring(IMAGE_PREFIX.length()), imageDir, productImages)) summary.images++;
+                }
+                zip.closeEntry();
+            }
+            if (summary.createdAt == null) throw new IOException("Empty catalog snapshot");
+
+            listener.onProgress("Calculating prices...");
+            dbHelper.updateDisplayPriceRanges(variableIds);
+            // After the products, whatever order the entries came in
+            dbHelper.markProductImagesDownloaded(productImages);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            zip.close();
+        }
+
+        // Next sync only asks for what changed after the snapshot was taken. commit(), not apply():
+        // if the process dies with the write still queued, the next run crawls the whole catalog again.
+        // Both callers run this off the main thread.
+        SharedPreferences prefs = context.getSharedPreferences("FalconStorePrefs", Context.MODE_PRIVATE);
+        prefs.edit()
+                .putString("LAST_SYNC_DATE", summary.createdAt)
+                .remove("LAST_CATEGORY_SYNC")
+                .remove("LAST_ZOMBIE_CLEANUP") // deletions since the snapshot are found by the first cleanup
+                .commit();
+
+        Log.d(TAG, "Imported " + summary);
+        return summary;
+    }
+
+    private String readManifest(Reader reader) throws IOException {
+        Manifest manifest = gson.fromJson(reader, Manifest.class);
+        if (manifest == null || manifest.format != FORMAT_VERSION || manifest.created_at == null) {
+            throw new IOException("Unsupported catalog snapshot (format " + (manifest != null ? manifest.format : -1) + ")");
+        }
+        return manifest.created_at;
+    }
+
+    private int importCategories(Reader in) throws IOException {
+        List<Category> batch = new ArrayList<>();
+        int count = 0;
+        JsonReader reader = new JsonReader(in);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            batch.add(gson.fromJson(reader, Category.class));
+            count++;
+        }
+        reader.endArray();
+        dbHelper.upsertCategories(batch);
+        return count;
+    }
+
+    private int importProducts(Reader in, List<Integer> variableIds, ProgressListener listener) throws IOException {
+        final List<Product> batch = new ArrayList<>();
+        final int[] count = {0};
+        ProductStreamParser.parse(in, p -> {
+            batch.add(p);
+            if ("variable".equalsIgnoreCase(p.getType())) variableIds.add(p.getId());
+            if (batch.size() >= BATCH_SIZE) {
+                dbHelper.upsertProducts(batch);
+                count[0] += batch.size();
+                batch.clear();
+                listener.onProgress("Importing products (" + count[0] + ")...");
+            }
+            return true;
+        });
+        dbHelper.upsertProducts(batch);
+        return count[0] + batch.size();
+    }
+
+    private int importVariations(Reader in, ProgressListener listener) throws IOException {
+        List<Variation> batch = new ArrayList<>();
+        int count = 0;
+        JsonReader reader = new JsonReader(in);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            batch.add(gson.fromJson(reader, Variation.class));
+            if (batch.size() >= BATCH_SIZE) {
+                dbHelper.upsertVariations(batch);
+                count += batch.size();
+                batch.clear();
+                listener.onProgress("Importing variations (" + count + ")...");
+            }
+        }
+        reader.endArray();
+        dbHelper.upsertVariations(batch);
+        return count + batch.size();
+    }
+
+    private boolean extractImage(ZipInputStream zip, String fileName, File imageDir, List<ProductImage> productImages) throws IOException {
+        if (!IMAGE_NAME.matcher(fileName).matches()) {
+            Log.w(TAG, "Skipping unexpected snapshot entry images/" + fileName);
+            return false;
+        }
+        if (!imageDir.exists()) imageDir.mkdirs();
+
+        File target = new File(imageDir, fileName);
+        try (OutputStream out = new FileOutputStream(target)) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = zip.read(buf)) > 0) {
+                out.write(buf, 0, len);
+            }
+        }
+
+        // Product images are recorded as downloaded at the end of the import, so ImageWorker skips
+        // them. (It no longer trusts files it finds: a file can be left over from an older URL.)
+        Matcher m = PRODUCT_IMAGE_NAME.matcher(fileName);
+        if (m.matches() && target.length() > 0) {
+            ProductImage image = new ProductImage(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)),
+                    null, null, 0, ProductImage.STATE_PENDING);
+            image.markDownloaded(target.getAbsolutePath(), target.length());
+            productImages.add(image);
+        }
+        return true;
+    }
+
+    // Lets a JsonReader close "its" stream without closing the whole zip
+    private static class EntryStream extends FilterInputStream {
+        EntryStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the entry is closed by ZipInputStream.closeEntry()
+        }
+    }
+}
@@ -5,12 +5,16 @@ import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
+import android.net.Uri;
 import android.os.Bundle;
+import android.view.View;
 import android.widget.Button;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.work.Data;
 import androidx.work.ExistingWorkPolicy;
@@ -18,11 +22,18 @@ import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkInfo;
 import androidx.work.WorkManager;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 public class SyncActivity extends AppCompatActivity {
 
     private TextView txtStatus, txtProgress;
     private ProgressBar progressBar;
-    private Button btnCancel;
+    private Button btnCancel, btnImport;
+
+    // Sideloaded catalog snapshot (zip from snapshot-tool)
+    private final ActivityResultLauncher<String[]> pickSnapshot =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), this::importSnapshot);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,6 +44,7 @@ public class SyncActivity extends AppCompatActivity {
         txtProgress = findViewById(R.id.txtProgress);
         progressBar = findViewById(R.id.progressBar);
         btnCancel = findViewById(R.id.btnCancel);
+        btnImport = findViewById(R.id.btnImport);
 
         txtStatus.setText("Checking Internet...");
 
@@ -47,6 +59,9 @@ public class SyncActivity extends AppCompatActivity {
                 progressBar.setIndeterminate(false);
                 progressBar.setProgress(0);
                 Toast.makeText(this, "Connect to Internet to Sync", Toast.LENGTH_LONG).show();
+
+                btnImport.setVisibility(View.VISIBLE);
+                btnImport.setOnClickListener(v -> pickSnapshot.launch(new String[]{"application/zip", "application/octet-stream"}));
             }
         }
     }
@@ -109,6 +124,34 @@ public class SyncActivity extends AppCompatActivity {
         });
     }
 
+    private void importSnapshot(Uri uri) {
+        if (uri == null) return;
+        btnImport.setEnabled(false);
+        progressBar.setIndeterminate(true);
+        txtStatus.setText("Importing catalog...");
+
+        new Thread(() -> {
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open " + uri);
+                SnapshotImporter importer = new SnapshotImporter(this, new DatabaseHelper(this));
+                SnapshotImporter.Summary summary = importer.importBundle(in,
+                        status -> runOnUiThread(() -> txtStatus.setText(status)));
+
+                runOnUiThread(() -> {
+                    // Online again by now? Then catch up on what changed since the snapshot
+                    if (isOnline()) startSync();
+                    else finishSync("Catalog imported: " + summary.products + " products");
+                });
+            } catch (Exception e) {
+                runOnUiThread(() -> {
+                    btnImport.setEnabled(true);
+                    progressBar.setIndeterminate(false);
+                    txtStatus.setText("Import failed: " + e.getMessage());
+                });
+            }
+        }).start();
+    }
+
     private void finishSync(String message) {
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
         Intent intent = new Intent(SyncActivity.this, HomeActivity.class);
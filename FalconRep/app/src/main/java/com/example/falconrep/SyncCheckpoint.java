@@ -0,0 +1,160 @@
+package com.example.falconrep;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Durable progress of the current sync run.
+ * If WorkManager stops SyncWorker (Doze, swipe-away, network loss) the next run
+ * continues from the last committed product offset / pending variation parents instead of the
+ * start. The zombie scan has no progress here: it always reads the whole id list in one run.
+ * A run is identified by its generation; LAST_SYNC_DATE is still only written once
+ * the whole generation is done.
+ */
+public class SyncCheckpoint {
+
+    public static final String PHASE_PRODUCTS = "products";
+    public static final String PHASE_VARIATIONS = "variations";
+    public static final String PHASE_CATEGORIES = "categories";
+    public static final String PHASE_ZOMBIES = "zombies";
+    public static final String PHASE_DONE = "done";
+
+    private static final String PREFS_NAME = "FalconSyncState";
+    private static final String KEY_GENERATION = "generation";
+    private static final String KEY_PHASE = "phase";
+    private static final String KEY_STARTED_AT = "started_at";
+    private static final String KEY_MODIFIED_AFTER = "modified_after";
+    private static final String KEY_PRODUCTS_OFFSET = "products_offset";
+    private static final String KEY_PENDING_PARENTS = "pending_variation_parents";
+
+    private final SharedPreferences prefs;
+
+    private int generation;
+    private String phase;
+    private String startedAt;
+    private String modifiedAfter;
+    private int productsOffset;   // every product before this offset is committed
+    private final Set<Integer> pendingParents = new LinkedHashSet<>();
+
+    // Ranges (start -> end) committed out of order above the watermark (parallel fetchers).
+    // Not persisted: after a restart they are simply fetched again, which is harmless.
+    private final TreeMap<Integer, Integer> committedAhead = new TreeMap<>();
+
+    public SyncCheckpoint(Context context) {
+        this(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    // Unit tests pass in their own prefs
+    SyncCheckpoint(SharedPreferences prefs) {
+        this.prefs = prefs;
+        generation = prefs.getInt(KEY_GENERATION, 0);
+        phase = prefs.getString(KEY_PHASE, PHASE_DONE);
+        startedAt = prefs.getString(KEY_STARTED_AT, null);
+        modifiedAfter = prefs.getString(KEY_MODIFIED_AFTER, null);
+        productsOffset = prefs.getInt(KEY_PRODUCTS_OFFSET, 0);
+
+        String pending = prefs.getString(KEY_PENDING_PARENTS, "");
+        if (pending != null && !pending.isEmpty()) {
+            for (String id : pending.split(",")) {
+                try { pendingParents.add(Integer.parseInt(id)); } catch (NumberFormatException ignored) {}
+            }
+        }
+    }
+
+    public synchronized boolean isInProgress() {
+        return generation > 0 && !PHASE_DONE.equals(phase) && startedAt != null;
+    }
+
+    /** Starts a new generation. modifiedAfter is null for a full sync. */
+    public synchronized void begin(String startedAt, String modifiedAfter) {
+        generation++;
+        phase = PHASE_PRODUCTS;
+        this.startedAt = startedAt;
+        this.modifiedAfter = modifiedAfter;
+        productsOffset = 0;
+        pendingParents.clear();
+        committedAhead.clear();
+        save();
+    }
+
+    public synchronized int getGeneration() { return generation; }
+    public synchronized String getPhase() { return phase; }
+    public synchronized String getStartedAt() { return startedAt; }
+    public synchronized String getModifiedAfter() { return modifiedAfter; }
+    public synchronized int getProductsOffset() { return productsOffset; }
+
+    public synchronized void setPhase(String phase) {
+        this.phase = phase;
+        save();
+    }
+
+    public synchronized void finish() {
+        phase = PHASE_DONE;
+        pendingParents.clear();
+        save();
+    }
+
+    // Gives up on the current generation (an error resuming can't get past, or too old to trust).
+    // Unlike finish() the caller leaves LAST_SYNC_DATE alone, so the next generation starts from
+    // the same cutoff and lists again whatever this one had only partly done.
+    public synchronized void abandon() {
+        phase = PHASE_DONE;
+        pendingParents.clear();
+        committedAhead.clear();
+        save();
+    }
+
+    /** Called by the writer after the products in [start, end) are in the DB. */
+    public synchronized void onProductRangeCommitted(int start, int end, Collection<Integer> variableParentIds) {
+        pendingParents.addAll(variableParentIds);
+        if (end > productsOffset) {
+            Integer known = committedAhead.get(start);
+            if (known == null || known < end) committedAhead.put(start, end);
+        }
+        // Ranges can have different sizes (adaptive per_page), so advance while they touch
+        while (!committedAhead.isEmpty() && committedAhead.firstKey() <= productsOffset) {
+            productsOffset = Math.max(productsOffset, committedAhead.pollFirstEntry().getValue());
+        }
+        save();
+    }
+
+    public synchronized List<Integer> getPendingVariationParents() {
+        return new ArrayList<>(pendingParents);
+    }
+
+    public synchronized void onVariationsCommitted(Collection<Integer> parentIds) {
+        pendingParents.removeAll(parentIds);
+        save();
+    }
+
+    // commit(), not apply(): save() runs right after the writer's transaction, and an apply() still
+    // queued when the process dies is lost, leaving the checkpoint behind (or ahead of) the DB.
+    // Always called off the main thread.
+    private void save() {
+        prefs.edit()
+                .putInt(KEY_GENERATION, generation)
+                .putString(KEY_PHASE, phase)
+                .putString(KEY_STARTED_AT, startedAt)
+                .putString(KEY_MODIFIED_AFTER, modifiedAfter)
+                .putInt(KEY_PRODUCTS_OFFSET, productsOffset)
+                .putString(KEY_PENDING_PARENTS, joinIds(pendingParents))
+                .commit();
+    }
+
+    // Plain Java rather than TextUtils.join, so the class runs in JVM unit tests
+    private static String joinIds(Collection<Integer> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (Integer id : ids) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+}
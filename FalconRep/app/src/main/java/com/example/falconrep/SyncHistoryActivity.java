@@ -0,0 +1,156 @@
+package com.example.falconrep;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.falconrep.models.SyncRun;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Last sync / image runs from sync_runs, with a CSV export of everything that is kept
+public class SyncHistoryActivity extends AppCompatActivity {
+
+    private static final int RUNS_SHOWN = 50;
+    private static final int RUNS_EXPORTED = 1000; // more than the table keeps, i.e. all of them
+
+    private DatabaseHelper dbHelper;
+    private SyncRunAdapter adapter;
+    private final List<SyncRun> runs = new ArrayList<>();
+    private TextView txtNoRuns;
+
+    private final ActivityResultLauncher<String> exportLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"), this::exportRuns);
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_history);
+
+        dbHelper = new DatabaseHelper(this);
+        txtNoRuns = findViewById(R.id.txtNoRuns);
+        RecyclerView recyclerView = findViewById(R.id.rvSyncRuns);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new SyncRunAdapter(runs);
+        recyclerView.setAdapter(adapter);
+
+        Button btnExport = findViewById(R.id.btnExportRuns);
+        btnExport.setOnClickListener(v -> {
+            String stamp = new SimpleDateFormat("yyyyMMdd-HHmm", Locale.US).format(new Date());
+            exportLauncher.launch("falcon-sync-runs-" + stamp + ".csv");
+        });
+
+        loadRuns();
+    }
+
+    private void loadRuns() {
+        new Thread(() -> {
+            List<SyncRun> loaded = dbHelper.getRecentSyncRuns(RUNS_SHOWN);
+            runOnUiThread(() -> {
+                runs.clear();
+                runs.addAll(loaded);
+                adapter.notifyDataSetChanged();
+                txtNoRuns.setVisibility(runs.isEmpty() ? View.VISIBLE : View.GONE);
+            });
+        }).start();
+    }
+
+    private void exportRuns(Uri uri) {
+        if (uri == null) return; // picker cancelled
+        new Thread(() -> {
+            String message;
+            try (OutputStream out = getContentResolver().openOutputStream(uri);
+                 Writer writer = new OutputStreamWriter(out, "UTF-8")) {
+                List<SyncRun> all = dbHelper.getRecentSyncRuns(RUNS_EXPORTED);
+                writer.write(SyncRun.csvHeader());
+                writer.write("\n");
+                for (SyncRun run : all) {
+                    writer.write(run.toCsvRow());
+                    writer.write("\n");
+                }
+                message = "Exported " + all.size() + " runs";
+            } catch (Exception e) {
+                message = "Export failed: " + e.getMessage();
+            }
+            String result = message;
+            runOnUiThread(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }).start();
+    }
+
+    private static String formatDetails(SyncRun run) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%.1f s total", run.durationMs / 1000.0));
+        if (SyncRun.WORKER_SYNC.equals(run.worker)) {
+            if (run.snapshotMs > 0) sb.append(seconds(" | snapshot ", run.snapshotMs));
+            sb.append(seconds(" | products ", run.productsMs));
+            sb.append(seconds(" | variations ", run.variationsMs));
+            sb.append(seconds(" | categories ", run.categoriesMs));
+            sb.append(seconds(" | cleanup ", run.zombiesMs));
+        }
+        sb.append(String.format(Locale.US, "%n%d requests (%d retried, %d not modified), %.1f KB in",
+                run.requests, run.retries, run.cacheHits, run.bytesIn / 1024.0));
+        sb.append(String.format(Locale.US, "%n%d rows written, %d skipped", run.rowsWritten, run.rowsSkipped));
+        return sb.toString();
+    }
+
+    private static String seconds(String label, long ms) {
+        return String.format(Locale.US, "%s%.1f s", label, ms / 1000.0);
+    }
+
+    class SyncRunAdapter extends RecyclerView.Adapter<SyncRunAdapter.ViewHolder> {
+        private final List<SyncRun> list;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+
+        SyncRunAdapter(List<SyncRun> list) { this.list = list; }
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_sync_run, parent, false);
+            return new ViewHolder(v);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            SyncRun run = list.get(position);
+            String attempt = run.attempt > 0 ? " (attempt " + (run.attempt + 1) + ")" : "";
+            holder.title.setText(dateFormat.format(new Date(run.startedAt)) + " | " + run.worker + " | " + run.outcome + attempt);
+            holder.title.setTextColor(SyncRun.OUTCOME_SUCCESS.equals(run.outcome) ? 0xFF333333 : 0xFFD32F2F);
+            holder.details.setText(formatDetails(run));
+            holder.error.setVisibility(run.error != null ? View.VISIBLE : View.GONE);
+            holder.error.setText(run.error);
+        }
+
+        @Override
+        public int getItemCount() { return list.size(); }
+
+        class ViewHolder extends RecyclerView.ViewHolder {
+            TextView title, details, error;
+            public ViewHolder(@NonNull View itemView) {
+                super(itemView);
+                title = itemView.findViewById(R.id.txtRunTitle);
+                details = itemView.findViewById(R.id.txtRunDetails);
+                error = itemView.findViewById(R.id.txtRunError);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.falconrep;
+
+import android.util.Log;
+
+import com.example.falconrep.models.Product;
+import com.example.falconrep.models.Variation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands parsed pages from the fetcher threads to a single writer thread.
+ * The queue is bounded: when SQLite falls behind, put() blocks the fetchers
+ * so we never hold more than a few pages in memory.
+ */
+public class SyncPipeline {
+
+    private static final String TAG = "FalconSync";
+
+    public interface PageWriter {
+        void write(Page page) throws Exception;
+    }
+
+    public interface ProgressListener {
+        void onPageWritten(SyncPipeline pipeline, Page page);
+    }
+
+    // One unit of work: a range of products, or the variations of a group of variable products
+    public static class Page {
+        public final int number;  // first product offset, or index of the first parent in the group
+        public final int span;    // how many items were requested (the range is [number, number + span))
+        public final List<Product> products;
+        public final List<Variation> variations;
+        public final List<Integer> parentIds; // variable products whose variations are all in this page
+        // The API page the products came from, recorded with them (validator null: nothing to record)
+        public final long urlHash;
+        public final String validator;
+
+        public Page(int number, int span, List<Product> products, List<Variation> variations) {
+            this(number, span, products, variations, Collections.<Integer>emptyList());
+        }
+
+        public Page(int number, int span, List<Product> products, List<Variation> variations, List<Integer> parentIds) {
+            this(number, span, products, variations, parentIds, 0, null);
+        }
+
+        public Page(int number, int span, List<Product> products, List<Variation> variations, List<Integer> parentIds,
+                    long urlHash, String validator) {
+            this.number = number;
+            this.span = span;
+            this.products = products;
+            this.variations = variations;
+            this.parentIds = parentIds;
+            this.urlHash = urlHash;
+            this.validator = validator;
+        }
+    }
+
+    private static final Page END_OF_STREAM = new Page(-1, 0, null, null);
+
+    private final BlockingQueue<Page> queue;
+    private final PageWriter writer;
+    private final ProgressListener listener;
+    private final Thread writerThread;
+    private volatile Throwable writerError;
+
+    // Stage timings (nanos). "Blocked" = fetchers waiting on a full queue (disk is the bottleneck),
+    // "idle" = writer waiting on an empty queue (network is the bottleneck).
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong fetchBlockedNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong writerIdleNanos = new AtomicLong();
+    private final AtomicInteger pagesWritten = new AtomicInteger();
+    private final AtomicInteger productsWritten = new AtomicInteger();
+
+    public SyncPipeline(int capacity, PageWriter writer, ProgressListener listener) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = writer;
+        this.listener = listener;
+        this.writerThread = new Thread(this::drain, "FalconSyncWriter");
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    /** Called by fetcher threads. Blocks while the queue is full. */
+    public void put(Page page) throws InterruptedException {
+        long start = System.nanoTime();
+        while (!queue.offer(page, 250, TimeUnit.MILLISECONDS)) {
+            // Don't wait forever on a writer that already died
+            if (writerError != null || !writerThread.isAlive()) {
+                throw new IllegalStateException("Sync writer stopped", writerError);
+            }
+        }
+        fetchBlockedNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    public void recordFetch(long nanos) {
+        fetchNanos.addAndGet(nanos);
+    }
+
+    /** Signals end of input and waits for the writer to drain everything queued so far. */
+    public void finish() throws Exception {
+        if (writerThread.isAlive()) {
+            queue.put(END_OF_STREAM);
+            writerThread.join();
+        }
+        if (writerError != null) {
+            if (writerError instanceof Exception) throw (Exception) writerError;
+            throw new RuntimeException(writerError);
+        }
+        Log.d(TAG, "Pipeline done: " + getTimingSummary());
+    }
+
+    /** Stops the writer without draining (used when a fetcher failed). */
+    public void abort() {
+        writerThread.interrupt();
+        queue.clear();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                Page page = queue.take();
+                writerIdleNanos.addAndGet(System.nanoTime() - waitStart);
+                if (page == END_OF_STREAM) break;
+
+                long writeStart = System.nanoTime();
+                writer.write(page);
+                writeNanos.addAndGet(System.nanoTime() - writeStart);
+
+                pagesWritten.incrementAndGet();
+                productsWritten.addAndGet(page.products.size());
+                if (listener != null) listener.onPageWritten(this, page);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            Log.e(TAG, "Sync writer failed", t);
+            writerError = t;
+        }
+    }
+
+    public int getPagesWritten() { return pagesWritten.get(); }
+    public int getProductsWritten() { return productsWritten.get(); }
+    public long getFetchMs() { return TimeUnit.NANOSECONDS.toMillis(fetchNanos.get()); }
+    public long getFetchBlockedMs() { return TimeUnit.NANOSECONDS.toMillis(fetchBlockedNanos.get()); }
+    public long getWriteMs() { return TimeUnit.NANOSECONDS.toMillis(writeNanos.get()); }
+    public long getWriterIdleMs() { return TimeUnit.NANOSECONDS.toMillis(writerIdleNanos.get()); }
+
+    public String getTimingSummary() {
+        return "fetch=" + getFetchMs() + "ms, fetch_blocked=" + getFetchBlockedMs()
+                + "ms, write=" + getWriteMs() + "ms, writer_idle=" + getWriterIdleMs() + "ms";
+    }
+}
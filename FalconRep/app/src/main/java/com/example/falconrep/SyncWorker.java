@@ -3,6 +3,7 @@ package com.example.falconrep;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -13,7 +14,10 @@ import androidx.work.WorkerParameters;
 
 import com.example.falconrep.models.Category;
 import com.example.falconrep.models.Product;
+import com.example.falconrep.models.SyncRun;
 import com.example.falconrep.models.Variation;
+import com.example.falconrep.utils.ContentHash;
+import com.example.falconrep.utils.SortedIds;
 
 import java.io.IOException;
 import java.text.ParseException;
@@ -24,91 +28,270 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.logging.HttpLoggingInterceptor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import retrofit2.Call;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
 public class SyncWorker extends Worker {
 
-    private static final String BASE_URL = "https://falconstationery.com/wp-json/wc/v3/";
     private static final String TAG = "FalconSync";
 
+    // Input key: how many product pages may be in flight at once (1 = sequential sync)
+    public static final String KEY_MAX_IN_FLIGHT = "max_in_flight";
+    // Upper bound only: RequestScheduler decides how many of these actually hit the server at once
+    private static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    // Input key: also download every product page without _fields and log both sizes
+    public static final String KEY_MEASURE_PAYLOAD = "measure_payload";
+    // Adaptive per_page for products: starts at 50 and stays within [10, 100] (WooCommerce's limit),
+    // aiming for each request to finish well inside the 45s read timeout
+    private static final int PRODUCT_PAGE_SIZE = 50;
+    private static final int MIN_PRODUCT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final long PRODUCT_PAGE_TARGET_MS = TimeUnit.SECONDS.toMillis(8);
+    private static final int RESUME_OVERLAP_ITEMS = 10;
+    // Categories rarely change; refresh them at least this often even when no product did
+    private static final long CATEGORY_REFRESH_INTERVAL_MS = TimeUnit.HOURS.toMillis(24);
+    // Parsed pages waiting for the writer; fetchers block once this is full
+    private static final int PIPELINE_CAPACITY = 4;
+    // Input key: how many variable products may have variation requests in flight at once
+    public static final String KEY_VARIATION_CONCURRENCY = "variation_concurrency";
+    private static final int DEFAULT_VARIATION_CONCURRENCY = 4;
+    // Variation / category / id pages are small even at the maximum, so they always use it
+    private static final int VARIATION_PAGE_SIZE = MAX_PAGE_SIZE;
+    private static final int VARIATION_PARENTS_PER_BATCH = 10;
+    // Input key: catalog snapshot to import on a fresh install (defaults to BuildConfig.SNAPSHOT_URL)
+    public static final String KEY_SNAPSHOT_URL = "snapshot_url";
+    // Network failures are retried by WorkManager (resuming from the checkpoint) this many times
+    private static final int MAX_NETWORK_RETRIES = 5;
+    // An interrupted generation older than this starts over instead of resuming
+    private static final long CHECKPOINT_MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+    // Ids-only pages are tiny, so use the largest page WooCommerce allows
+    private static final int ID_PAGE_SIZE = MAX_PAGE_SIZE;
+    // Incremental syncs can't see deletions; re-check the full id list this often
+    private static final long ZOMBIE_CLEANUP_INTERVAL_MS = TimeUnit.HOURS.toMillis(24);
+    // Page validators older than this are dropped when a new generation starts
+    private static final long SYNC_PAGE_TTL_MS = TimeUnit.DAYS.toMillis(7);
+
     private final DatabaseHelper dbHelper;
     private final SharedPreferences prefs;
     private final WooCommerceAPI api;
+    private final SyncCheckpoint checkpoint;
+    private final TrafficMeter trafficMeter;
+    private final RequestScheduler scheduler;
 
     private final SimpleDateFormat iso8601Format;
     private String newSyncTime;
 
+    // Rows actually written, and rows whose content hash matched so nothing was written
+    private final AtomicInteger rowsWritten = new AtomicInteger();
+    private final AtomicInteger rowsSkipped = new AtomicInteger();
+    // Requests answered 304 by the server (conditional request on a cached page)
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    // Measurement mode totals (bytes, uncompressed)
+    private final AtomicLong fullPayloadBytes = new AtomicLong();
+    private final AtomicLong projectedPayloadBytes = new AtomicLong();
+
     public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
         dbHelper = new DatabaseHelper(context);
         prefs = context.getSharedPreferences("FalconStorePrefs", Context.MODE_PRIVATE);
+        checkpoint = new SyncCheckpoint(context);
 
-        iso8601Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-        iso8601Format.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-        logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
+        iso8601Format = newIso8601Format();
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(45, TimeUnit.SECONDS)
-                .readTimeout(45, TimeUnit.SECONDS)
-                .writeTimeout(45, TimeUnit.SECONDS)
-                .addInterceptor(logging)
-                .addInterceptor(chain -> {
-                    Request original = chain.request();
-                    Request request = original.newBuilder()
-                            .header("User-Agent", "FalconRep/1.0")
-                            .method(original.method(), original.body())
-                            .build();
-                    return chain.proceed(request);
-                })
-                .build();
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BASE_URL)
-                .client(client)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-
-        api = retrofit.create(WooCommerceAPI.class);
+        NetworkClient network = NetworkClient.get(context);
+        api = network.getApi();
+        trafficMeter = network.getTrafficMeter();
+        scheduler = network.getScheduler();
     }
 
     @NonNull
     @Override
     public Result doWork() {
+        SyncRun run = new SyncRun(SyncRun.WORKER_SYNC, System.currentTimeMillis(), getRunAttemptCount());
+        long start = SystemClock.elapsedRealtime();
+        TrafficMeter.Snapshot trafficAtStart = trafficMeter.snapshot();
+        long retriesAtStart = scheduler.getRetryCount();
+
+        Result result = sync(run);
+
+        TrafficMeter.Snapshot traffic = trafficMeter.snapshot().since(trafficAtStart);
+        run.outcome = outcomeOf(result);
+        if (isStopped() && run.error == null) run.error = "Stopped by the system";
+        run.durationMs = SystemClock.elapsedRealtime() - start;
+        run.requests = traffic.requests;
+        run.bytesIn = traffic.bytesReceived;
+        run.retries = scheduler.getRetryCount() - retriesAtStart;
+        run.cacheHits = cacheHits.get();
+        run.rowsWritten = rowsWritten.get();
+        run.rowsSkipped = rowsSkipped.get();
+        recordRun(dbHelper, run);
+        return result;
+    }
+
+    private Result sync(SyncRun run) {
         try {
             Log.d(TAG, "Sync Started...");
+            TrafficMeter.Snapshot trafficAtStart = trafficMeter.snapshot();
             updateProgress("Checking for updates...", 0);
 
-            newSyncTime = iso8601Format.format(new Date());
-            Date cutoffDate = getSafeLastSyncDate();
+            // Continue an interrupted generation, or start a new one
+            boolean resumed = checkpoint.isInProgress();
+            if (resumed && isCheckpointExpired()) {
+                Log.w(TAG, "Abandoning sync generation " + checkpoint.getGeneration() + " from " + checkpoint.getStartedAt());
+                checkpoint.abandon();
+                resumed = false;
+            }
+            // 0. Fresh install: bulk-load the prebuilt catalog instead of crawling all of it
+            long phaseStart = SystemClock.elapsedRealtime();
+            if (!resumed && dbHelper.getProductCount() == 0) {
+                importSnapshotIfAvailable();
+                run.snapshotMs = SystemClock.elapsedRealtime() - phaseStart;
+            }
+            if (resumed) {
+                Log.d(TAG, "Resuming sync generation " + checkpoint.getGeneration() + " at " + checkpoint.getPhase());
+            } else {
+                Date lastSync = getSafeLastSyncDate();
+                dbHelper.pruneSyncPages(System.currentTimeMillis() - SYNC_PAGE_TTL_MS);
+                checkpoint.begin(iso8601Format.format(new Date()),
+                        lastSync != null ? iso8601Format.format(lastSync) : null);
+            }
+            newSyncTime = checkpoint.getStartedAt();
+            Date cutoffDate = checkpoint.getModifiedAfter() != null ? iso8601Format.parse(checkpoint.getModifiedAfter()) : null;
+
+            // 1. Fetch Products (only the delta when we have a cutoff)
+            int changedProducts = 0;
+            if (SyncCheckpoint.PHASE_PRODUCTS.equals(checkpoint.getPhase())) {
+                phaseStart = SystemClock.elapsedRealtime();
+                changedProducts = fetchNewAndModifiedProducts(cutoffDate);
+                run.productsMs = SystemClock.elapsedRealtime() - phaseStart;
+                if (isStopped()) return Result.retry();
+                checkpoint.setPhase(SyncCheckpoint.PHASE_VARIATIONS);
+            }
 
-            // 1. Fetch Categories (Now with proper pagination)
-            fetchCategories();
+            // 2. Variations of every variable product the products phase touched
+            if (SyncCheckpoint.PHASE_VARIATIONS.equals(checkpoint.getPhase())) {
+                phaseStart = SystemClock.elapsedRealtime();
+                fetchPendingVariations();
+                run.variationsMs = SystemClock.elapsedRealtime() - phaseStart;
+                if (isStopped()) return Result.retry();
+                checkpoint.setPhase(SyncCheckpoint.PHASE_CATEGORIES);
+            }
 
-            // 2. Fetch Products
-            fetchNewAndModifiedProducts(cutoffDate);
+            // 3. Fetch Categories - skipped on a no-op delta so an idle sync is a single request
+            if (SyncCheckpoint.PHASE_CATEGORIES.equals(checkpoint.getPhase())) {
+                long lastCategorySync = prefs.getLong("LAST_CATEGORY_SYNC", 0);
+                if (cutoffDate == null || resumed || changedProducts > 0
+                        || System.currentTimeMillis() - lastCategorySync > CATEGORY_REFRESH_INTERVAL_MS) {
+                    phaseStart = SystemClock.elapsedRealtime();
+                    fetchCategories();
+                    run.categoriesMs = SystemClock.elapsedRealtime() - phaseStart;
+                    prefs.edit().putLong("LAST_CATEGORY_SYNC", System.currentTimeMillis()).apply();
+                }
+                if (isStopped()) return Result.retry();
+                checkpoint.setPhase(SyncCheckpoint.PHASE_ZOMBIES);
+            }
 
-            // 3. Cleanup
-            performZombieCleanup();
+            // 4. Cleanup
+            if (SyncCheckpoint.PHASE_ZOMBIES.equals(checkpoint.getPhase())) {
+                phaseStart = SystemClock.elapsedRealtime();
+                performZombieCleanup();
+                run.zombiesMs = SystemClock.elapsedRealtime() - phaseStart;
+                if (isStopped()) return Result.retry();
+            }
 
-            prefs.edit().putString("LAST_SYNC_DATE", newSyncTime).apply();
+            // Decides whether the next run is a delta, so it must be on disk before the checkpoint says done
+            prefs.edit().putString("LAST_SYNC_DATE", newSyncTime).commit();
+            checkpoint.finish();
+            Log.d(TAG, "Sync traffic: " + trafficMeter.snapshot().since(trafficAtStart)
+                    + ", " + cacheHits.get() + " pages not modified"
+                    + ", concurrency limit " + scheduler.getConcurrencyLimit());
 
             updateProgress("Data Sync Complete", 100);
-            return Result.success();
+            return Result.success(new Data.Builder()
+                    .putInt("cache_hits", cacheHits.get())
+                    .putInt("rows_written", rowsWritten.get())
+                    .putInt("rows_skipped", rowsSkipped.get())
+                    .build());
+        } catch (IOException e) {
+            // Network trouble: the checkpoint keeps what we have, let WorkManager try again
+            Log.e(TAG, "Sync interrupted (attempt " + getRunAttemptCount() + ")", e);
+            run.error = String.valueOf(e);
+            // A 4xx would come back on every resume of this generation, so the retry starts a new one
+            if (e instanceof HttpStatusException && ((HttpStatusException) e).isPermanent()) checkpoint.abandon();
+            if (getRunAttemptCount() < MAX_NETWORK_RETRIES) return Result.retry();
+            // Otherwise every later periodic run would resume into the same error
+            checkpoint.abandon();
+            return Result.failure(new Data.Builder().putString("error", e.getMessage()).build());
         } catch (Exception e) {
             Log.e(TAG, "Sync Crashed", e);
+            run.error = String.valueOf(e);
+            // Not when stopped: then the exception is only the interruption, and the run resumes
+            if (!isStopped()) checkpoint.abandon();
             return Result.failure(new Data.Builder().putString("error", e.getMessage()).build());
         }
     }
 
+    static String outcomeOf(Result result) {
+        if (result instanceof Result.Success) return SyncRun.OUTCOME_SUCCESS;
+        if (result instanceof Result.Retry) return SyncRun.OUTCOME_RETRY;
+        return SyncRun.OUTCOME_FAILURE;
+    }
+
+    // Telemetry must never fail the run it describes
+    static void recordRun(DatabaseHelper dbHelper, SyncRun run) {
+        try {
+            dbHelper.insertSyncRun(run);
+        } catch (Exception e) {
+            Log.e(TAG, "Could not record sync run", e);
+        }
+    }
+
+    // Falls back to the normal full crawl when there is no snapshot or it can't be imported
+    private void importSnapshotIfAvailable() {
+        String url = getInputData().getString(KEY_SNAPSHOT_URL);
+        if (TextUtils.isEmpty(url)) url = BuildConfig.SNAPSHOT_URL;
+        if (TextUtils.isEmpty(url)) return;
+
+        try {
+            SnapshotImporter importer = new SnapshotImporter(getApplicationContext(), dbHelper);
+            SnapshotImporter.Summary summary = importer.importFromUrl(
+                    NetworkClient.get(getApplicationContext()).getDownloadClient(), url,
+                    status -> updateProgress(status, 5));
+            Log.d(TAG, "Catalog snapshot imported: " + summary);
+        } catch (Exception e) {
+            Log.e(TAG, "Catalog snapshot import failed, doing a full sync instead", e);
+        }
+    }
+
+    private static SimpleDateFormat newIso8601Format() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    // Its cutoff and offsets describe a catalog that has moved on since; unreadable counts as expired
+    private boolean isCheckpointExpired() {
+        try {
+            Date started = iso8601Format.parse(checkpoint.getStartedAt());
+            return started == null || System.currentTimeMillis() - started.getTime() > CHECKPOINT_MAX_AGE_MS;
+        } catch (ParseException e) {
+            return true;
+        }
+    }
+
     private Date getSafeLastSyncDate() {
         if (dbHelper.getProductCount() == 0) return null;
         String storedTime = prefs.getString("LAST_SYNC_DATE", null);
@@ -127,152 +310,543 @@ public class SyncWorker extends Worker {
 
     // UPDATED: Loops through all category pages and cleans up deleted ones
     private void fetchCategories() throws IOException {
-        updateProgress("Fetching Categories...", 10);
+        updateProgress("Fetching Categories...", 85);
 
         int page = 1;
         boolean hasMore = true;
-        boolean syncFailed = false;
-        List<Integer> serverCategoryIds = new ArrayList<>();
+        SortedIds.Builder serverCategoryIds = new SortedIds.Builder();
 
         while (hasMore) {
             // hide_empty = false: Ensures we update a category even if you just deleted its last product
             Response<List<Category>> response = api.fetchCategories(
-                    BuildConfig.WC_KEY, BuildConfig.WC_SECRET, 100, page, false).execute();
+                    BuildConfig.WC_KEY, BuildConfig.WC_SECRET, MAX_PAGE_SIZE, page, false).execute();
 
             if (response.isSuccessful() && response.body() != null) {
                 List<Category> batch = response.body();
                 if (batch.isEmpty()) {
                     hasMore = false;
                 } else {
-                    for (Category c : batch) {
-                        dbHelper.upsertCategory(c);
-                        serverCategoryIds.add(c.getId());
+                    // Same rule as product pages (see enqueuePage); ids are still needed for the cleanup below
+                    long urlHash = pageKey(response);
+                    String validator = NetworkClient.validatorOf(response.raw());
+                    if (!countCacheHit(response) || !dbHelper.isSyncPageStored(urlHash, validator)) {
+                        writeCategoryPage(batch, urlHash, validator);
                     }
+                    for (Category c : batch) serverCategoryIds.add(c.getId());
                     page++;
                 }
             } else {
-                Log.e(TAG, "Category Sync Error: " + response.code());
-                hasMore = false;
-                syncFailed = true;
+                throw httpError(response, "category page " + page);
             }
         }
 
         // Cleanup: Delete local categories that are no longer on server
-        // Only run if sync was fully successful to prevent accidental wipes on network error
-        if (!syncFailed && !serverCategoryIds.isEmpty()) {
-            List<Category> localCats = dbHelper.getAllCategories();
-            List<Integer> toDelete = new ArrayList<>();
-
-            for (Category c : localCats) {
-                if (!serverCategoryIds.contains(c.getId())) {
-                    toDelete.add(c.getId());
-                }
+        // Only reached when every page came back, so a network error can't wipe categories
+        if (serverCategoryIds.size() > 0) {
+            int[] toDelete = SortedIds.minus(dbHelper.getAllCategoryIds(), serverCategoryIds.build());
+            dbHelper.deleteCategories(toDelete);
+        }
+    }
+
+    // Returns how many products were written
+    private int fetchNewAndModifiedProducts(Date cutoffDate) throws Exception {
+        final long cutoffTime = (cutoffDate != null) ? cutoffDate.getTime() : 0;
+        // Server-side delta: only products changed since the cutoff are sent at all.
+        // The client-side cutoff check below stays as a fallback for servers that ignore it.
+        final String modifiedAfter = (cutoffDate != null) ? iso8601Format.format(cutoffDate) : null;
+
+        // Resuming: start a little before the committed offset. Re-reading a few products absorbs
+        // small shifts in the listing since the last run and costs no disk writes (content hashes match).
+        final int firstOffset = Math.max(0, checkpoint.getProductsOffset() - RESUME_OVERLAP_ITEMS);
+        updateProgress("Syncing Products...", 10);
+
+        // per_page follows the measured latency / throughput; ranges are addressed by offset so a
+        // size change between two requests can't skip or repeat products
+        final PageSizer sizer = new PageSizer(MIN_PRODUCT_PAGE_SIZE, MAX_PAGE_SIZE, PRODUCT_PAGE_SIZE, PRODUCT_PAGE_TARGET_MS);
+
+        final boolean measurePayload = getInputData().getBoolean(KEY_MEASURE_PAYLOAD, false);
+        final int firstSpan = sizer.nextSize();
+        if (measurePayload) logPayloadSavings(firstOffset, firstSpan, modifiedAfter);
+
+        // 1. The first range is always fetched alone: its headers tell us how much is left
+        long fetchStart = System.nanoTime();
+        Response<ResponseBody> first = productPageCall(firstOffset, firstSpan, modifiedAfter).execute();
+        long firstTtfb = System.nanoTime() - fetchStart;
+        if (!first.isSuccessful() || first.body() == null) {
+            throw httpError(first, "products at offset " + firstOffset);
+        }
+
+        final int totalItems = parseIntHeader(first, "X-WP-Total");
+        Log.d(TAG, "Server reports " + totalItems + " products");
+
+        // Without the header we can't know where the end is, so fall back to one range at a time
+        int maxInFlight = totalItems > 0
+                ? Math.max(1, getInputData().getInt(KEY_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT))
+                : 1;
+
+        // 2. Fetchers download + parse ranges, a single writer thread owns the DB
+        final SyncPipeline pipeline = new SyncPipeline(PIPELINE_CAPACITY, this::writePage,
+                (pl, page) -> reportPipelineProgress(pl, totalItems));
+        pipeline.start();
+
+        // Shared between fetchers: the next offset to claim, and the first offset we no longer need
+        final AtomicInteger nextOffset = new AtomicInteger(firstOffset + firstSpan);
+        final AtomicInteger stopOffset = new AtomicInteger(totalItems > 0 ? totalItems : Integer.MAX_VALUE);
+        // Set by the first fetcher that fails, so the others stop claiming ranges: the run is retried anyway
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        ExecutorService pool = Executors.newFixedThreadPool(maxInFlight);
+        try {
+            pipeline.recordFetch(firstTtfb);
+            if (!enqueuePage(pipeline, sizer, firstOffset, firstSpan, first, firstTtfb, cutoffTime, newIso8601Format(), stopOffset)) {
+                lowerStopOffset(stopOffset, firstOffset + firstSpan);
             }
 
-            if (!toDelete.isEmpty()) {
-                SQLiteDatabase db = dbHelper.getWritableDatabase();
-                String args = TextUtils.join(", ", toDelete);
-                // Note: 'categories' table and 'cat_id' column names must match DatabaseHelper
-                db.execSQL("DELETE FROM categories WHERE cat_id IN (" + args + ")");
+            List<Future<Void>> fetchers = new ArrayList<>();
+            for (int i = 0; i < maxInFlight; i++) {
+                fetchers.add(pool.submit(() -> {
+                    SimpleDateFormat format = newIso8601Format(); // SimpleDateFormat is not thread-safe
+                    try {
+                        while (!isStopped() && !failed.get()) {
+                            int span = sizer.nextSize();
+                            int offset = nextOffset.getAndAdd(span);
+                            if (offset >= stopOffset.get()) break;
+                            if (measurePayload) logPayloadSavings(offset, span, modifiedAfter);
+
+                            long start = System.nanoTime();
+                            Response<ResponseBody> response = productPageCall(offset, span, modifiedAfter).execute();
+                            long ttfb = System.nanoTime() - start;
+                            pipeline.recordFetch(ttfb);
+
+                            if (!response.isSuccessful() || response.body() == null) {
+                                throw httpError(response, "products at offset " + offset);
+                            }
+                            if (!enqueuePage(pipeline, sizer, offset, span, response, ttfb, cutoffTime, format, stopOffset)) {
+                                lowerStopOffset(stopOffset, offset + span);
+                            }
+                        }
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                }));
             }
+            for (Future<Void> f : fetchers) awaitFetcher(f);
+
+            pipeline.finish();
+
+            if (measurePayload) {
+                Log.i(TAG, "Payload total: full=" + fullPayloadBytes.get() + " B, _fields=" + projectedPayloadBytes.get() + " B");
+            }
+            Log.d(TAG, "Unchanged rows skipped: " + rowsSkipped.get() + ", final per_page " + sizer.nextSize());
+            return pipeline.getProductsWritten();
+        } catch (Exception e) {
+            pipeline.abort();
+            throw e;
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    private void fetchNewAndModifiedProducts(Date cutoffDate) throws IOException {
-        int page = 1;
-        boolean hasMore = true;
-        boolean stopFetching = false;
-        long cutoffTime = (cutoffDate != null) ? cutoffDate.getTime() : 0;
+    private Call<ResponseBody> productPageCall(int offset, int perPage, String modifiedAfter) {
+        return productPageCall(offset, perPage, modifiedAfter, WooCommerceAPI.PRODUCT_FIELDS);
+    }
 
-        while (hasMore && !stopFetching) {
-            updateProgress("Syncing Products (Page " + page + ")...", 30);
+    private Call<ResponseBody> productPageCall(int offset, int perPage, String modifiedAfter, String fields) {
+        return api.fetchWooCommerceProducts(
+                BuildConfig.WC_KEY, BuildConfig.WC_SECRET,
+                perPage, offset, "publish", "modified", "desc",
+                modifiedAfter, modifiedAfter != null ? Boolean.TRUE : null, fields);
+    }
 
-            Response<List<Product>> response = api.fetchWooCommerceProducts(
-                    BuildConfig.WC_KEY, BuildConfig.WC_SECRET,
-                    50, page, "publish", "modified", "desc").execute();
+    // Measurement mode: fetches the page with and without _fields and logs both sizes.
+    // Costs two extra requests per page, so it's only for checking payload savings on a real catalog.
+    private void logPayloadSavings(int offset, int perPage, String modifiedAfter) {
+        try {
+            long full = countBodyBytes(productPageCall(offset, perPage, modifiedAfter, null));
+            long projected = countBodyBytes(productPageCall(offset, perPage, modifiedAfter, WooCommerceAPI.PRODUCT_FIELDS));
+            fullPayloadBytes.addAndGet(full);
+            projectedPayloadBytes.addAndGet(projected);
+            Log.i(TAG, String.format(Locale.US, "Payload offset %d: full=%d B, _fields=%d B (%.0f%% smaller)",
+                    offset, full, projected, full > 0 ? 100.0 * (full - projected) / full : 0.0));
+        } catch (IOException e) {
+            Log.w(TAG, "Payload measurement failed for offset " + offset + ": " + e.getMessage());
+        }
+    }
 
-            if (response.isSuccessful() && response.body() != null) {
-                List<Product> batch = response.body();
-                if (batch.isEmpty()) {
-                    hasMore = false;
-                } else {
-                    for (Product p : batch) {
-                        if (cutoffTime > 0 && p.getDateModifiedGmt() != null) {
-                            try {
-                                Date pDate = iso8601Format.parse(p.getDateModifiedGmt());
-                                if (pDate != null && pDate.getTime() < cutoffTime) {
-                                    stopFetching = true;
-                                    break;
-                                }
-                            } catch (ParseException e) {}
+    private static long countBodyBytes(Call<ResponseBody> call) throws IOException {
+        Response<ResponseBody> response = call.execute();
+        ResponseBody body = response.isSuccessful() ? response.body() : response.errorBody();
+        if (body == null) return 0;
+        try {
+            BufferedSource source = body.source();
+            Buffer sink = new Buffer();
+            long total = 0;
+            long read;
+            while ((read = source.read(sink, 8192)) != -1) {
+                total += read;
+                sink.clear();
+            }
+            return total;
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Runs on a fetcher thread: streams the range [offset, offset + span), stops at the sync
+     * cutoff, feeds the page sizer and queues the result for the writer.
+     * Returns false when no later range can contain anything new.
+     */
+    private boolean enqueuePage(SyncPipeline pipeline, PageSizer sizer, int offset, int span,
+                                Response<ResponseBody> response, long ttfbNanos, long cutoffTime,
+                                SimpleDateFormat format, AtomicInteger stopOffset) throws IOException, InterruptedException {
+        try {
+            // 304 only says the HTTP cache has this range, not that the DB does: the process may have
+            // died (or the run aborted) before the writer committed it. So parsing and the DB write are
+            // skipped only when the writer recorded this URL with the same validator along with the
+            // rows; an empty page is still queued so the checkpoint moves past it. Any other 304 is
+            // parsed from the cache like a 200, and the content hashes skip the rows that are stored.
+            long urlHash = pageKey(response);
+            String validator = NetworkClient.validatorOf(response.raw());
+            if (countCacheHit(response) && dbHelper.isSyncPageStored(urlHash, validator)) {
+                response.body().close();
+                if (offset < stopOffset.get()) {
+                    pipeline.put(new SyncPipeline.Page(offset, span, new ArrayList<>(), new ArrayList<>()));
+                }
+                return true;
+            }
+
+            final boolean[] reachedCutoff = {false};
+            final List<Product> products = new ArrayList<>();
+            AtomicLong bytes = new AtomicLong();
+
+            long parseStart = System.nanoTime();
+            int read = ProductStreamParser.parse(PageSizer.counting(response.body(), bytes), p -> {
+                if (cutoffTime > 0 && p.getDateModifiedGmt() != null) {
+                    try {
+                        Date pDate = format.parse(p.getDateModifiedGmt());
+                        if (pDate != null && pDate.getTime() < cutoffTime) {
+                            reachedCutoff[0] = true;
+                            return false;
                         }
-                        dbHelper.upsertProduct(p);
-                        if ("variable".equalsIgnoreCase(p.getType())) {
-                            fetchVariationsForProduct(p.getId());
+                    } catch (ParseException e) {}
+                }
+                products.add(p);
+                return true;
+            });
+            long parseNanos = System.nanoTime() - parseStart;
+            pipeline.recordFetch(parseNanos);
+            if (read == 0) return false;
+            if (!reachedCutoff[0]) {
+                sizer.record(read, bytes.get(), TimeUnit.NANOSECONDS.toMillis(ttfbNanos), TimeUnit.NANOSECONDS.toMillis(parseNanos));
+            }
+
+            // Another fetcher may have found the cutoff in an earlier range while we were downloading
+            if (offset < stopOffset.get() && !products.isEmpty()) {
+                pipeline.put(new SyncPipeline.Page(offset, span, products, new ArrayList<>(),
+                        Collections.<Integer>emptyList(), urlHash, validator));
+            }
+            // A short range means we've reached the end of the listing
+            return !reachedCutoff[0] && read >= span;
+        } finally {
+            // Normally closed by the parser already; an early exit must still free the body's
+            // RequestScheduler slot
+            response.body().close();
+        }
+    }
+
+    private void writePage(SyncPipeline.Page page) {
+        // Rows and the page's validator commit together (the upserts nest in this transaction)
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int productsWritten;
+        int variationsWritten;
+        db.beginTransaction();
+        try {
+            productsWritten = dbHelper.upsertProducts(page.products);
+            variationsWritten = dbHelper.upsertVariations(page.variations);
+            if (page.validator != null) dbHelper.saveSyncPage(page.urlHash, page.validator);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        rowsWritten.addAndGet(productsWritten + variationsWritten);
+        rowsSkipped.addAndGet(page.products.size() - productsWritten + page.variations.size() - variationsWritten);
+
+        // Only after the transaction: a crash before this line just re-fetches the range
+        List<Integer> variableIds = new ArrayList<>();
+        for (Product p : page.products) {
+            if ("variable".equalsIgnoreCase(p.getType())) variableIds.add(p.getId());
+        }
+        checkpoint.onProductRangeCommitted(page.number, page.number + page.span, variableIds);
+    }
+
+    private void writeCategoryPage(List<Category> batch, long urlHash, String validator) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            dbHelper.upsertCategories(batch);
+            if (validator != null) dbHelper.saveSyncPage(urlHash, validator);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // sync_pages key. The URL includes the API credentials, so only its hash is stored
+    private static long pageKey(Response<?> response) {
+        return ContentHash.of(response.raw().request().url().toString());
+    }
+
+    // True when the page was answered 304 Not Modified and served from the HTTP cache
+    private boolean countCacheHit(Response<?> response) {
+        if (!NetworkClient.isNotModified(response.raw())) return false;
+        cacheHits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * RequestScheduler has already retried 429/5xx by the time we see an error, so give up on this
+     * run: the IOException makes WorkManager retry later, resuming from the checkpoint, instead of
+     * finishing the sync with pages missing (and moving LAST_SYNC_DATE past them).
+     */
+    private static IOException httpError(Response<?> response, String what) {
+        closeQuietly(response);
+        Log.e(TAG, "HTTP " + response.code() + " for " + what);
+        return new HttpStatusException(response.code(), "HTTP " + response.code() + " for " + what);
+    }
+
+    private static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+
+        // 4xx other than 408 / 429: the same request fails the same way however often it's retried
+        boolean isPermanent() {
+            return code >= 400 && code < 500 && !RequestScheduler.isRetryable(code);
+        }
+    }
+
+    private static void closeQuietly(Response<?> response) {
+        if (response.errorBody() != null) response.errorBody().close();
+        if (response.body() instanceof ResponseBody) ((ResponseBody) response.body()).close();
+    }
+
+    private static void lowerStopOffset(AtomicInteger stopOffset, int offset) {
+        int current;
+        while (offset < (current = stopOffset.get())) {
+            if (stopOffset.compareAndSet(current, offset)) break;
+        }
+    }
+
+    private static void awaitFetcher(Future<Void> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    private static int parseIntHeader(Response<?> response, String name) {
+        String value = response.headers().get(name);
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Fetches variations for all pending parents with a bounded number of concurrent requests.
+    // The writer stores them and recomputes display_price for every touched parent in one SQL pass.
+    private void fetchPendingVariations() throws Exception {
+        final List<Integer> parents = checkpoint.getPendingVariationParents();
+        if (parents.isEmpty()) return;
+        updateProgress("Syncing Variations (0/" + parents.size() + ")...", 70);
+
+        int concurrency = Math.max(1, getInputData().getInt(KEY_VARIATION_CONCURRENCY, DEFAULT_VARIATION_CONCURRENCY));
+        final AtomicInteger parentsDone = new AtomicInteger();
+        final SyncPipeline pipeline = new SyncPipeline(PIPELINE_CAPACITY, this::writeVariationPage, (pl, page) -> {
+            int done = parentsDone.addAndGet(page.parentIds.size());
+            updateProgress("Syncing Variations (" + done + "/" + parents.size() + ")...", 70 + (10 * done / parents.size()));
+        });
+        pipeline.start();
+
+        // Fetchers claim groups of parents, so each writer transaction covers several products
+        final AtomicInteger nextIndex = new AtomicInteger();
+        // Same as the product fetchers: the first failure stops the others from claiming more groups
+        final AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Void>> fetchers = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                fetchers.add(pool.submit(() -> {
+                    try {
+                        while (!isStopped() && !failed.get()) {
+                            int from = nextIndex.getAndAdd(VARIATION_PARENTS_PER_BATCH);
+                            if (from >= parents.size()) break;
+                            List<Integer> group = parents.subList(from, Math.min(parents.size(), from + VARIATION_PARENTS_PER_BATCH));
+
+                            long start = System.nanoTime();
+                            List<Variation> variations = new ArrayList<>();
+                            for (int parentId : group) {
+                                if (failed.get()) return null;
+                                variations.addAll(fetchVariationsForProduct(parentId));
+                            }
+                            pipeline.recordFetch(System.nanoTime() - start);
+
+                            pipeline.put(new SyncPipeline.Page(from, group.size(), Collections.<Product>emptyList(), variations, new ArrayList<>(group)));
                         }
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
                     }
-                    page++;
-                }
-            } else {
-                Log.e(TAG, "API Error: " + response.code());
-                hasMore = false;
+                    return null;
+                }));
             }
+            for (Future<Void> f : fetchers) awaitFetcher(f);
+            pipeline.finish();
+        } catch (Exception e) {
+            pipeline.abort();
+            throw e;
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    private void fetchVariationsForProduct(int productId) throws IOException {
-        Response<List<Variation>> response = api.fetchProductVariations(
-                productId, BuildConfig.WC_KEY, BuildConfig.WC_SECRET, 100).execute();
+    private void writeVariationPage(SyncPipeline.Page page) {
+        int written = dbHelper.upsertVariations(page.variations);
+        rowsWritten.addAndGet(written);
+        rowsSkipped.addAndGet(page.variations.size() - written);
+        dbHelper.updateDisplayPriceRanges(page.parentIds);
+        checkpoint.onVariationsCommitted(page.parentIds);
+    }
 
-        if (response.isSuccessful() && response.body() != null) {
-            List<Double> prices = new ArrayList<>();
-            for (Variation v : response.body()) {
-                v.setParentId(productId);
-                dbHelper.upsertVariation(v);
-                try {
-                    String pStr = v.getPrice().replace(",", "").trim();
-                    if (!pStr.isEmpty()) prices.add(Double.parseDouble(pStr));
-                } catch (NumberFormatException e) {}
+    // Follows X-WP-TotalPages so products with more than 100 variations are complete
+    private List<Variation> fetchVariationsForProduct(int productId) throws IOException {
+        List<Variation> variations = new ArrayList<>();
+        int page = 1;
+        int totalPages = 1;
+        while (page <= totalPages) {
+            Response<List<Variation>> response = api.fetchProductVariations(
+                    productId, BuildConfig.WC_KEY, BuildConfig.WC_SECRET,
+                    VARIATION_PAGE_SIZE, page, WooCommerceAPI.VARIATION_FIELDS).execute();
+
+            if (response.code() == 404) {
+                // Deleted since the products phase listed it: nothing to store, and it leaves the
+                // pending list with its group (zombie cleanup removes the product itself)
+                closeQuietly(response);
+                Log.w(TAG, "Product " + productId + " is gone, skipping its variations");
+                return Collections.emptyList();
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                // Don't commit a parent with half its variations
+                throw httpError(response, "variations of product " + productId);
             }
-            if (!prices.isEmpty()) {
-                double min = Collections.min(prices);
-                double max = Collections.max(prices);
-                String range = (Math.abs(max - min) < 0.01)
-                        ? String.format(Locale.US, "%.2f", min)
-                        : String.format(Locale.US, "%.2f - %.2f", min, max);
-                dbHelper.updateProductDisplayPrice(productId, range);
+            List<Variation> batch = response.body();
+            for (Variation v : batch) {
+                v.setParentId(productId);
+                variations.add(v);
             }
+
+            int reported = parseIntHeader(response, "X-WP-TotalPages");
+            // No header: keep going while pages come back full
+            totalPages = reported > 0 ? reported : (batch.size() >= VARIATION_PAGE_SIZE ? page + 1 : page);
+            page++;
         }
+        return variations;
     }
 
+    // Deleted / unpublished products never show up in a modified_after delta, so the full
+    // id list is compared against the local one on the first sync and then periodically.
     private void performZombieCleanup() throws IOException {
-        String storedTime = prefs.getString("LAST_SYNC_DATE", null);
-        if (storedTime != null) return;
+        boolean due = prefs.getString("LAST_SYNC_DATE", null) == null
+                || System.currentTimeMillis() - prefs.getLong("LAST_ZOMBIE_CLEANUP", 0) > ZOMBIE_CLEANUP_INTERVAL_MS;
+        if (!due) return;
 
         updateProgress("Cleaning up deleted items...", 90);
-        List<Integer> serverIds = new ArrayList<>();
+
+        // Always the whole list within one run: a scan continued hours later would have missed every
+        // product that moved back a page past the resume point. In id order, so products created
+        // meanwhile land at the end instead of shifting the pages still to come.
+        SortedIds.Builder serverIds = new SortedIds.Builder();
         int page = 1;
-        boolean hasMore = true;
+        int totalPages = 0;
 
-        while (hasMore) {
-            Response<List<Product>> response = api.fetchAllProductIds(
+        while (true) {
+            if (isStopped()) return;
+            Response<ResponseBody> response = api.fetchAllProductIds(
                     BuildConfig.WC_KEY, BuildConfig.WC_SECRET,
-                    100, page, "publish", "id").execute();
+                    ID_PAGE_SIZE, page, "publish", "id", "asc", "id").execute();
+            if (response.code() == 400 && page > 1) {
+                // WooCommerce's answer to a page past the end: the catalog shrank during the scan
+                closeQuietly(response);
+                break;
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                throw httpError(response, "id page " + page);
+            }
+            if (totalPages == 0) totalPages = parseIntHeader(response, "X-WP-TotalPages");
 
-            if (response.isSuccessful() && response.body() != null) {
-                List<Product> batch = response.body();
-                if (batch.isEmpty()) hasMore = false;
-                else { for (Product p : batch) serverIds.add(p.getId()); page++; }
-            } else hasMore = false;
+            countCacheHit(response);
+            int read = ProductStreamParser.parseIds(response.body(), serverIds);
+            // Saves the trailing empty request when the server tells us the page count
+            if (read == 0 || (totalPages > 0 && page >= totalPages)) break;
+            page++;
+        }
+
+        if (serverIds.size() > 0) {
+            // A deletion during the scan still shifts later products back onto a page already read,
+            // so every candidate is asked for by id before its local row goes
+            int[] candidates = SortedIds.minus(dbHelper.getAllLocalProductIds(), serverIds.build());
+            int[] toDelete = SortedIds.minus(candidates, fetchListedIds(candidates));
+            if (isStopped()) return;
+            if (toDelete.length > 0) {
+                Log.d(TAG, "Removing " + toDelete.length + " products no longer on the server");
+                dbHelper.deleteProducts(toDelete);
+            }
         }
+        prefs.edit().putLong("LAST_ZOMBIE_CLEANUP", System.currentTimeMillis()).apply();
+    }
 
-        if (serverIds.isEmpty()) return;
-        List<Integer> localIds = dbHelper.getAllLocalProductIds();
-        List<Integer> toDelete = new ArrayList<>();
-        for (Integer localId : localIds) {
-            if (!serverIds.contains(localId)) toDelete.add(localId);
+    // Those of the given (sorted) ids the server still lists, sorted
+    private int[] fetchListedIds(int[] ids) throws IOException {
+        SortedIds.Builder listed = new SortedIds.Builder();
+        for (int from = 0; from < ids.length && !isStopped(); from += ID_PAGE_SIZE) {
+            int to = Math.min(ids.length, from + ID_PAGE_SIZE);
+            StringBuilder include = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                if (i > from) include.append(',');
+                include.append(ids[i]);
+            }
+            Response<ResponseBody> response = api.fetchProductIdsIn(
+                    BuildConfig.WC_KEY, BuildConfig.WC_SECRET,
+                    include.toString(), to - from, "publish", "id").execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                throw httpError(response, "id lookup of " + (to - from) + " products");
+            }
+            countCacheHit(response);
+            ProductStreamParser.parseIds(response.body(), listed);
         }
-        if (!toDelete.isEmpty()) dbHelper.deleteProducts(toDelete);
+        return listed.build();
+    }
+
+    // Called on the writer thread after each committed page
+    private void reportPipelineProgress(SyncPipeline pipeline, int totalItems) {
+        int written = checkpoint.getProductsOffset(); // includes ranges committed by earlier runs
+        setProgressAsync(new Data.Builder()
+                .putString("status", "Syncing Products (" + written + (totalItems > 0 ? "/" + totalItems : "") + ")...")
+                .putInt("progress", totalItems > 0 ? 10 + Math.min(70, (int) (70L * written / totalItems)) : 10)
+                .putLong("fetch_ms", pipeline.getFetchMs())
+                .putLong("fetch_blocked_ms", pipeline.getFetchBlockedMs())
+                .putLong("write_ms", pipeline.getWriteMs())
+                .putLong("writer_idle_ms", pipeline.getWriterIdleMs())
+                .build());
     }
 
     private void updateProgress(String status, int percent) {
@@ -0,0 +1,91 @@
+package com.example.falconrep;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Network interceptor that counts what actually went over the wire.
+ * It sits below OkHttp's transparent gzip, so the byte counts are compressed sizes.
+ * Counters are process-wide; workers take a snapshot at the start and log the difference.
+ */
+public class TrafficMeter implements Interceptor {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong headerNanos = new AtomicLong(); // request sent -> response headers
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.body() != null && request.body().contentLength() > 0) {
+            bytesSent.addAndGet(request.body().contentLength());
+        }
+
+        long start = System.nanoTime();
+        Response response = chain.proceed(request);
+        headerNanos.addAndGet(System.nanoTime() - start);
+        requests.incrementAndGet();
+
+        ResponseBody body = response.body();
+        if (body == null) return response;
+
+        // Count body bytes as the caller reads them (works for @Streaming bodies too)
+        ForwardingSource counting = new ForwardingSource(body.source()) {
+            @Override
+            public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) bytesReceived.addAndGet(read);
+                return read;
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(counting), body.contentType(), body.contentLength()))
+                .build();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(requests.get(), bytesSent.get(), bytesReceived.get(),
+                TimeUnit.NANOSECONDS.toMillis(headerNanos.get()));
+    }
+
+    public static class Snapshot {
+        public final long requests;
+        public final long bytesSent;
+        public final long bytesReceived;
+        public final long headerMs;
+
+        Snapshot(long requests, long bytesSent, long bytesReceived, long headerMs) {
+            this.requests = requests;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.headerMs = headerMs;
+        }
+
+        /** What happened between {@code earlier} and this snapshot. */
+        public Snapshot since(Snapshot earlier) {
+            return new Snapshot(requests - earlier.requests, bytesSent - earlier.bytesSent,
+                    bytesReceived - earlier.bytesReceived, headerMs - earlier.headerMs);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d requests, %.1f KB in, %.1f KB out, %d ms waiting for headers",
+                    requests, bytesReceived / 1024f, bytesSent / 1024f, headerMs);
+        }
+    }
+}
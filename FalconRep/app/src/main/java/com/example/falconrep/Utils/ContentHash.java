@@ -0,0 +1,35 @@
+package com.example.falconrep.utils;
+
+public class ContentHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 64-bit FNV-1a over the given strings.
+     * Stable across app runs and devices, so it can be persisted and compared on the next sync.
+     * Nulls and field boundaries are encoded, so ("ab", "c") != ("a", "bc") and null != "".
+     */
+    public static long of(String... parts) {
+        long hash = FNV_OFFSET;
+        for (String part : parts) {
+            if (part == null) {
+                hash = mix(hash, 0xFFFF);
+            } else {
+                for (int i = 0; i < part.length(); i++) {
+                    hash = mix(hash, part.charAt(i));
+                }
+            }
+            hash = mix(hash, 0xFFFE); // field separator
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int c) {
+        hash ^= (c & 0xFF);
+        hash *= FNV_PRIME;
+        hash ^= (c >>> 8);
+        hash *= FNV_PRIME;
+        return hash;
+    }
+}
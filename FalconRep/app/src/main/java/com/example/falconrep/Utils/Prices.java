@@ -0,0 +1,45 @@
+package com.example.falconrep.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class Prices {
+
+    // "1,250.50", "200", ".75"
+    private static final Pattern AMOUNT = Pattern.compile("\\d[\\d,]*(?:\\.\\d*)?|\\.\\d+");
+
+    /**
+     * Parses a stored price label ("120.00", "95.00 - 140.00", "1,250") into {min, max} in
+     * integer minor units (cents), so the DB can filter and sort on it. Done once when the row is
+     * written, never while binding a list row. Returns null when the label holds no amount.
+     */
+    public static long[] parseRange(String label) {
+        if (label == null || label.isEmpty()) return null;
+        long[] range = null;
+        Matcher m = AMOUNT.matcher(label);
+        while (m.find()) {
+            long value = toMinorUnits(m.group());
+            if (range == null) {
+                range = new long[]{value, value};
+            } else {
+                range[0] = Math.min(range[0], value);
+                range[1] = Math.max(range[1], value);
+            }
+        }
+        return range;
+    }
+
+    // What a rep types into the filter: "200" or "199.99" -> 19999. -1 when it isn't a price
+    public static long parseAmount(String text) {
+        if (text == null) return -1;
+        Matcher m = AMOUNT.matcher(text.trim());
+        return m.matches() ? toMinorUnits(m.group()) : -1;
+    }
+
+    private static long toMinorUnits(String amount) {
+        return new BigDecimal(amount.replace(",", "")).movePointRight(2)
+                .setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.falconrep.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set operations on sorted, duplicate-free int[] id lists.
+ * Used by the sync cleanup passes: a merge walk is O(n + m) with no boxing,
+ * where List.contains() per id was O(n * m).
+ */
+public class SortedIds {
+
+    /** Sorts in place and drops duplicates. Returns the trimmed array. */
+    public static int[] normalize(int[] ids, int length) {
+        if (length == 0) return new int[0];
+        Arrays.sort(ids, 0, length);
+        int out = 1;
+        for (int i = 1; i < length; i++) {
+            if (ids[i] != ids[out - 1]) ids[out++] = ids[i];
+        }
+        return Arrays.copyOf(ids, out);
+    }
+
+    /** Ids present in {@code a} but not in {@code b}. Both must be sorted. */
+    public static int[] minus(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        int count = 0;
+        int j = 0;
+        for (int id : a) {
+            while (j < b.length && b[j] < id) j++;
+            if (j == b.length || b[j] != id) result[count++] = id;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Growable int list so callers can collect ids without boxing. */
+    public static class Builder {
+        private int[] ids = new int[256];
+        private int size;
+
+        public void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        public int size() { return size; }
+
+        /** Sorted, duplicate-free copy of everything added so far. */
+        public int[] build() {
+            return normalize(Arrays.copyOf(ids, size), size);
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package com.example.falconrep;
 
 import com.example.falconrep.models.Category;
-import com.example.falconrep.models.Product;
 import com.example.falconrep.models.Variation;
 
 import java.util.List;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface WooCommerceAPI {
 
+    // _fields projections: only what Product / Variation (and ProductStreamParser) actually read.
+    // Stock WooCommerce can't filter meta_data by key, so the wholesale keys are picked out client-side.
+    String PRODUCT_FIELDS = "id,name,sku,price,description,type,date_modified_gmt,images,meta_data,categories";
+    String VARIATION_FIELDS = "id,price,attributes,image,meta_data";
+
     // UPDATED: Added 'page' parameter for pagination
     @GET("products/categories")
     Call<List<Category>> fetchCategories(
@@ -22,15 +28,20 @@ public interface WooCommerceAPI {
             @Query("hide_empty") boolean hideEmpty
     );
 
+    // Raw body on purpose: pages are parsed incrementally by ProductStreamParser
+    @Streaming
     @GET("products")
-    Call<List<Product>> fetchWooCommerceProducts(
+    Call<ResponseBody> fetchWooCommerceProducts(
             @Query("consumer_key") String key,
             @Query("consumer_secret") String secret,
             @Query("per_page") int perPage,
-            @Query("page") int page,
+            @Query("offset") int offset, // offset, not page: per_page changes during a run
             @Query("status") String status,
             @Query("orderby") String orderBy,
-            @Query("order") String order
+            @Query("order") String order,
+            @Query("modified_after") String modifiedAfter, // null = full sync (WC 5.8+)
+            @Query("dates_are_gmt") Boolean datesAreGmt,
+            @Query("_fields") String fields // null = full payload
     );
 
     @GET("products/{id}/variations")
@@ -38,16 +49,34 @@ public interface WooCommerceAPI {
             @retrofit2.http.Path("id") int productId,
             @Query("consumer_key") String key,
             @Query("consumer_secret") String secret,
-            @Query("per_page") int perPage
+            @Query("per_page") int perPage,
+            @Query("page") int page,
+            @Query("_fields") String fields
     );
 
+    // Ids-only pass for cleanup; streamed so a page is never materialised as List<Product>
+    @Streaming
     @GET("products")
-    Call<List<Product>> fetchAllProductIds(
+    Call<ResponseBody> fetchAllProductIds(
             @Query("consumer_key") String key,
             @Query("consumer_secret") String secret,
             @Query("per_page") int perPage,
             @Query("page") int page,
             @Query("status") String status,
-            @Query("fields") String fields
+            @Query("orderby") String orderBy,
+            @Query("order") String order,
+            @Query("_fields") String fields
+    );
+
+    // Which of the given ids (comma-separated, at most per_page) are still listed
+    @Streaming
+    @GET("products")
+    Call<ResponseBody> fetchProductIdsIn(
+            @Query("consumer_key") String key,
+            @Query("consumer_secret") String secret,
+            @Query("include") String ids,
+            @Query("per_page") int perPage,
+            @Query("status") String status,
+            @Query("_fields") String fields
     );
 }
\ No newline at end of file
@@ -1,13 +1,18 @@
 package com.example.falconrep.models;
 
 import android.content.Context;
-import android.text.TextUtils;
+
+import com.example.falconrep.utils.ContentHash;
+
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 public class Product {
+    private static final Pattern PRICE_TEXT = Pattern.compile("[0-9.,\\- ]+");
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]*>");
+
     private int id;
     private String name;
     private String sku;
@@ -19,11 +24,13 @@ public class Product {
     private List<MetaData> meta_data;
     private List<CategoryStub> categories;
 
-    private List<String> localPaths;
     private List<String> webUrls;
+    private String firstImageUrl;
+    private String firstImagePath;
     private String localWholesalePrice;
     private String categoryTokens;
     private String displayPrice;
+    private String wholesalePrice; // resolved once: getWholesalePrice() runs on every grid bind
 
     // --- API CONSTRUCTOR ---
     public Product(int id, String name, String sku, String price, String description, String type, String date_modified_gmt, List<Image> images, List<MetaData> meta_data, List<CategoryStub> categories) {
@@ -47,7 +54,8 @@ public class Product {
     }
 
     // --- DB CONSTRUCTOR ---
-    public Product(int id, String name, String sku, String price, String description, String type, String localPathsStr, String localWholesalePrice, String webUrlsStr, String categoryTokens, String displayPrice) {
+    // Only the first image: the gallery is in product_images (DatabaseHelper.getProductImages)
+    public Product(int id, String name, String sku, String price, String description, String type, String localWholesalePrice, String categoryTokens, String displayPrice, String firstImageUrl, String firstImagePath) {
         this.id = id;
         this.name = name;
         this.sku = sku;
@@ -57,16 +65,8 @@ public class Product {
         this.localWholesalePrice = localWholesalePrice;
         this.categoryTokens = categoryTokens;
         this.displayPrice = displayPrice;
-
-        this.localPaths = new ArrayList<>();
-        if (localPathsStr != null && !localPathsStr.isEmpty()) {
-            this.localPaths.addAll(Arrays.asList(localPathsStr.split("###")));
-        }
-
-        this.webUrls = new ArrayList<>();
-        if (webUrlsStr != null && !webUrlsStr.isEmpty()) {
-            this.webUrls.addAll(Arrays.asList(webUrlsStr.split("###")));
-        }
+        this.firstImageUrl = firstImageUrl;
+        this.firstImagePath = firstImagePath;
     }
 
     public int getId() { return id; }
@@ -76,21 +76,34 @@ public class Product {
     public String getDescription() { return description; }
     public String getType() { return type; }
     public String getDisplayPrice() { return displayPrice; }
+    public void setDisplayPrice(String displayPrice) {
+        this.displayPrice = displayPrice;
+        this.wholesalePrice = null;
+    }
     public String getDateModifiedGmt() { return date_modified_gmt; }
 
     public String getCategoryTokens() {
         if (categoryTokens != null) return categoryTokens;
         if (categories == null || categories.isEmpty()) return "";
+        // Names only, so a search for "pens" finds the pen category; membership is in getCategoryIds()
         StringBuilder sb = new StringBuilder();
         for (CategoryStub c : categories) {
-            // FIX: Changed "cat_" to "category" to prevent FTS tokenizer splitting
-            // "cat_6" into "cat" + "6", which causes false matches with products having numbers in names.
-            sb.append("category").append(c.id).append(" ");
             if (c.name != null) sb.append(c.name).append(" ");
         }
         return sb.toString().trim();
     }
 
+    // Rows for product_categories. Null for a product read back from the DB, which doesn't carry them
+    public List<Integer> getCategoryIds() {
+        if (categories == null) return null;
+        List<Integer> ids = new ArrayList<>(categories.size());
+        for (CategoryStub c : categories) {
+            if (c.id > 0) ids.add(c.id);
+        }
+        return ids;
+    }
+
+    // The API's image list; empty for a product read from the DB
     public List<String> getWebUrls() {
         if ((webUrls == null || webUrls.isEmpty()) && images != null) {
             webUrls = new ArrayList<>();
@@ -99,23 +112,14 @@ public class Product {
         return webUrls != null ? webUrls : new ArrayList<>();
     }
 
-    public List<String> getLocalPaths() { return localPaths != null ? localPaths : new ArrayList<>(); }
-    public void setLocalPaths(List<String> paths) { this.localPaths = paths; }
-
-    public String getLocalPathsString() {
-        if (localPaths == null || localPaths.isEmpty()) return "";
-        return TextUtils.join("###", localPaths);
-    }
-
     public String getWebUrlsString() {
         List<String> urls = getWebUrls();
         if (urls.isEmpty()) return "";
-        return TextUtils.join("###", urls);
+        return join("###", urls);
     }
 
     public String getFirstImageLocalPath() {
-        if (localPaths != null && !localPaths.isEmpty()) return localPaths.get(0);
-        return null;
+        return firstImagePath;
     }
 
     // NEW HELPER: Checks if the local file ACTUALLY exists and has data
@@ -132,12 +136,18 @@ public class Product {
     }
 
     public String getFirstImageWebUrl() {
+        if (firstImageUrl != null) return firstImageUrl;
         List<String> urls = getWebUrls();
         if (!urls.isEmpty()) return urls.get(0);
         return null;
     }
 
     public String getWholesalePrice() {
+        if (wholesalePrice == null) wholesalePrice = resolveWholesalePrice();
+        return wholesalePrice;
+    }
+
+    private String resolveWholesalePrice() {
         if (displayPrice != null && !displayPrice.isEmpty()) return displayPrice;
         if (localWholesalePrice != null && !localWholesalePrice.isEmpty()) return localWholesalePrice;
 
@@ -172,17 +182,70 @@ public class Product {
 
     private boolean isValidPrice(String val) {
         if (val == null || val.isEmpty() || val.equals("0")) return false;
-        return val.matches("[0-9.,\\- ]+");
+        return PRICE_TEXT.matcher(val).matches();
     }
 
-    private String cleanPrice(String raw) {
+    static String cleanPrice(String raw) {
         if (raw == null) return "";
-        return raw.replaceAll("<[^>]*>", "").trim();
+        if (raw.indexOf('<') < 0) return raw.trim();
+        return HTML_TAG.matcher(raw).replaceAll("").trim();
+    }
+
+    public void setLocalWholesalePrice(String price) {
+        this.localWholesalePrice = price;
+        this.wholesalePrice = null;
+    }
+
+    // Fingerprint of everything DatabaseHelper persists for this product.
+    // If it matches the stored one the row is left alone (no FTS reindex).
+    public long getContentHash() {
+        List<Integer> categoryIds = getCategoryIds();
+        return ContentHash.of(name, sku, getPrice(), getWholesalePrice(), description, type,
+                getCategoryTokens(), categoryIds != null ? join(",", categoryIds) : null,
+                displayPrice, getWebUrlsString());
+    }
+
+    // Plain Java rather than TextUtils.join, so hashing runs (and is tested) off the device
+    private static String join(String separator, List<?> items) {
+        StringBuilder sb = new StringBuilder();
+        boolean first = true;
+        for (Object item : items) {
+            if (!first) sb.append(separator);
+            sb.append(item);
+            first = false;
+        }
+        return sb.toString();
     }
 
-    public void setLocalWholesalePrice(String price) { this.localWholesalePrice = price; }
+    // Separate so that only a changed image list sends the product back to ImageWorker
+    public long getImageHash() {
+        return ContentHash.of(getWebUrlsString());
+    }
 
-    public static class Image { String src; }
-    public static class MetaData { String key; Object value; }
-    public static class CategoryStub { int id; String name; }
+    // Only these meta keys can ever feed getWholesalePrice(), so the streaming parser drops the rest
+    public static boolean isPriceMetaKey(String key) {
+        if (key == null) return false;
+        String k = key.toLowerCase();
+        return k.contains("price") && (k.contains("b2b") || k.contains("wholesalex"));
+    }
+
+    public static class Image {
+        String src;
+        public Image() {}
+        public Image(String src) { this.src = src; }
+    }
+
+    public static class MetaData {
+        String key;
+        Object value;
+        public MetaData() {}
+        public MetaData(String key, Object value) { this.key = key; this.value = value; }
+    }
+
+    public static class CategoryStub {
+        int id;
+        String name;
+        public CategoryStub() {}
+        public CategoryStub(int id, String name) { this.id = id; this.name = name; }
+    }
 }
\ No newline at end of file
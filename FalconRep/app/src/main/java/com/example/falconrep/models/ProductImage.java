@@ -0,0 +1,47 @@
+package com.example.falconrep.models;
+
+// One row of product_images: a product's image at a gallery position and how far its download got
+public class ProductImage {
+
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_DOWNLOADED = 1;
+    public static final int STATE_FAILED = 2; // not retried until the product's image list changes
+
+    private final int productId;
+    private final int position;
+    private final String webUrl;
+    private String localPath;
+    private long bytes;
+    private int state;
+
+    public ProductImage(int productId, int position, String webUrl, String localPath, long bytes, int state) {
+        this.productId = productId;
+        this.position = position;
+        this.webUrl = webUrl;
+        this.localPath = localPath;
+        this.bytes = bytes;
+        this.state = state;
+    }
+
+    public int getProductId() { return productId; }
+    public int getPosition() { return position; }
+    public String getWebUrl() { return webUrl; }
+    public String getLocalPath() { return localPath; }
+    public long getBytes() { return bytes; }
+    public int getState() { return state; }
+
+    public void markDownloaded(String localPath, long bytes) {
+        this.localPath = localPath;
+        this.bytes = bytes;
+        this.state = STATE_DOWNLOADED;
+    }
+
+    public void markFailed() {
+        this.state = STATE_FAILED;
+    }
+
+    // Same name ImageWorker and the snapshot tool use for the file
+    public String getFileName() {
+        return "prod_" + productId + "_" + position + ".jpg";
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.falconrep.models;
+
+import android.content.Context;
+
+import java.io.File;
+
+// What a catalog grid row shows. The full Product (description, gallery, variations) is loaded
+// only when the row is opened
+public class ProductSummary {
+
+    private final int id;
+    private final String name;
+    private final String priceLabel;
+    private final String firstImageUrl;
+    private final String firstImagePath;
+
+    public ProductSummary(int id, String name, String priceLabel, String firstImageUrl, String firstImagePath) {
+        this.id = id;
+        this.name = name;
+        this.priceLabel = Product.cleanPrice(priceLabel);
+        this.firstImageUrl = firstImageUrl;
+        this.firstImagePath = firstImagePath;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+    // Display price, else wholesale price, else list price: what Product.getWholesalePrice() gives a stored row
+    public String getPriceLabel() { return priceLabel; }
+    public String getFirstImageWebUrl() { return firstImageUrl; }
+
+    // Same check as Product.getValidLocalFile(): the file exists and isn't empty
+    public File getValidLocalFile(Context context) {
+        if (firstImagePath == null) return null;
+        File f = new File(firstImagePath);
+        return f.exists() && f.length() > 0 ? f : null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.falconrep.models;
+
+// What the catalog screen asks DatabaseHelper.searchPage() for. Prices are in minor units (cents)
+public class SearchFilter {
+
+    public static final int SORT_DEFAULT = 0;    // relevance for a typed query, otherwise name
+    public static final int SORT_PRICE_LOW = 1;
+    public static final int SORT_PRICE_HIGH = 2;
+
+    public static final long NO_LIMIT = -1;
+
+    public String query = "";
+    public int categoryId;                  // 0 = all categories
+    public long minPrice = NO_LIMIT;
+    public long maxPrice = NO_LIMIT;
+    public int sort = SORT_DEFAULT;
+
+    public SearchFilter() {
+    }
+
+    public SearchFilter(String query, int categoryId) {
+        this.query = query;
+        this.categoryId = categoryId;
+    }
+
+    public boolean hasPriceRange() {
+        return minPrice != NO_LIMIT || maxPrice != NO_LIMIT;
+    }
+
+    public SearchFilter copy() {
+        SearchFilter f = new SearchFilter(query, categoryId);
+        f.minPrice = minPrice;
+        f.maxPrice = maxPrice;
+        f.sort = sort;
+        return f;
+    }
+}
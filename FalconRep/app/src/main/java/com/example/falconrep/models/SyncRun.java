@@ -0,0 +1,68 @@
+package com.example.falconrep.models;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// One row of sync_runs: what a single SyncWorker / ImageWorker run did and what it cost.
+// Phase durations are 0 when the phase was skipped (or already done by an earlier attempt).
+public class SyncRun {
+
+    public static final String WORKER_SYNC = "sync";
+    public static final String WORKER_IMAGES = "images";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_RETRY = "retry";
+    public static final String OUTCOME_FAILURE = "failure";
+
+    public long id;
+    public String worker;
+    public long startedAt;  // wall clock, ms
+    public int attempt;     // WorkManager run attempt, 0 for the first
+    public String outcome;
+    public String error;    // failure cause, null on success
+
+    public long durationMs;
+    public long snapshotMs;
+    public long productsMs;
+    public long variationsMs;
+    public long categoriesMs;
+    public long zombiesMs;
+    public long imagesMs;
+
+    public long requests;
+    public long bytesIn;
+    public long retries;    // request retries done by RequestScheduler
+    public int cacheHits;
+    public int rowsWritten;
+    public int rowsSkipped;
+
+    public SyncRun() {
+    }
+
+    public SyncRun(String worker, long startedAt, int attempt) {
+        this.worker = worker;
+        this.startedAt = startedAt;
+        this.attempt = attempt;
+    }
+
+    public static String csvHeader() {
+        return "started_at,worker,attempt,outcome,duration_ms,snapshot_ms,products_ms,variations_ms,"
+                + "categories_ms,zombies_ms,images_ms,requests,bytes_in,retries,cache_hits,"
+                + "rows_written,rows_skipped,error";
+    }
+
+    public String toCsvRow() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        return format.format(new Date(startedAt)) + "," + worker + "," + attempt + "," + outcome + ","
+                + durationMs + "," + snapshotMs + "," + productsMs + "," + variationsMs + ","
+                + categoriesMs + "," + zombiesMs + "," + imagesMs + ","
+                + requests + "," + bytesIn + "," + retries + "," + cacheHits + ","
+                + rowsWritten + "," + rowsSkipped + "," + csvText(error);
+    }
+
+    private static String csvText(String value) {
+        if (value == null) return "";
+        return "\"" + value.replace("\"", "\"\"").replace('\n', ' ') + "\"";
+    }
+}
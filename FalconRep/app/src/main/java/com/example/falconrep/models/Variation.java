@@ -1,5 +1,7 @@
 package com.example.falconrep.models;
 
+import com.example.falconrep.utils.ContentHash;
+
 import java.util.List;
 
 public class Variation {
@@ -97,6 +99,10 @@ public class Variation {
         return null;
     }
 
+    public long getContentHash() {
+        return ContentHash.of(String.valueOf(parent_id), getPrice(), getAttributesString(), getWebImageUrl());
+    }
+
     public String getLocalImagePath() { return localImagePath; }
     public void setLocalImagePath(String path) { this.localImagePath = path; }
 
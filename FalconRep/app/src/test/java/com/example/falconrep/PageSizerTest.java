@@ -0,0 +1,64 @@
+package com.example.falconrep;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PageSizerTest {
+
+    private static final int ITEM_BYTES = 2000;
+
+    @Test
+    public void growsAtMostTwiceAStepUpToMax() {
+        PageSizer sizer = new PageSizer(10, 100, 20, 8000);
+        // 1000 bytes/ms: the target would fit thousands of items
+        int[] expected = {40, 80, 100, 100};
+        for (int size : expected) {
+            int items = sizer.nextSize();
+            sizer.record(items, items * ITEM_BYTES, 100, items * ITEM_BYTES / 1000);
+            assertEquals(size, sizer.nextSize());
+        }
+    }
+
+    @Test
+    public void shrinksAtMostHalfAStepDownToMin() {
+        PageSizer sizer = new PageSizer(10, 100, 50, 8000);
+        // 1 byte/ms: even 10 items would blow the target
+        int[] expected = {25, 12, 10, 10};
+        for (int size : expected) {
+            int items = sizer.nextSize();
+            sizer.record(items, items * ITEM_BYTES, 500, items * ITEM_BYTES);
+            assertEquals(size, sizer.nextSize());
+        }
+    }
+
+    @Test
+    public void ignoresEmptySamples() {
+        PageSizer sizer = new PageSizer(10, 100, 50, 8000);
+        sizer.record(0, 100000, 100, 100);
+        sizer.record(50, 0, 100, 100);
+        sizer.record(-1, -1, 100, 100);
+        assertEquals(50, sizer.nextSize());
+    }
+
+    @Test
+    public void alwaysWithinBounds() {
+        PageSizer sizer = new PageSizer(10, 100, 50, 8000);
+        Random random = new Random(42);
+        int previous = sizer.nextSize();
+        for (int i = 0; i < 1000; i++) {
+            int items = sizer.nextSize();
+            long bytes = items * (long) (1 + random.nextInt(50000));
+            sizer.record(items, bytes, random.nextInt(20000), random.nextInt(60000));
+
+            int size = sizer.nextSize();
+            assertTrue(size >= 10 && size <= 100);
+            assertTrue(size <= Math.max(10, previous * 2));
+            assertTrue(size >= Math.min(100, previous / 2));
+            previous = size;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.falconrep;
+
+import com.example.falconrep.models.Product;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductStreamParserTest {
+
+    // A /products page as WooCommerce returns it, plugin meta and unknown fields included
+    private static final String FIXTURE = "products_page.json";
+
+    @Test
+    public void readsEveryProduct() throws IOException {
+        List<Product> products = parseFixture();
+        assertEquals(3, products.size());
+        assertEquals(101, products.get(0).getId());
+        assertEquals(102, products.get(1).getId());
+        assertEquals(103, products.get(2).getId());
+    }
+
+    @Test
+    public void readsFields() throws IOException {
+        Product pen = parseFixture().get(0);
+        assertEquals("Blue Ballpoint Pen", pen.getName());
+        assertEquals("PEN-BL-01", pen.getSku());
+        assertEquals("120.00", pen.getPrice());
+        assertEquals("<p>Box of 12</p>", pen.getDescription());
+        assertEquals("simple", pen.getType());
+        assertEquals("2026-03-01T10:00:00", pen.getDateModifiedGmt());
+    }
+
+    @Test
+    public void readsImagesAndCategories() throws IOException {
+        Product pen = parseFixture().get(0);
+        assertEquals(Arrays.asList("https://example.com/img/pen-blue-1.jpg",
+                "https://example.com/img/pen-blue-2.jpg"), pen.getWebUrls());
+        assertEquals(Arrays.asList(12, 15), pen.getCategoryIds());
+        assertEquals("Pens Office", pen.getCategoryTokens());
+    }
+
+    @Test
+    public void toleratesNullsAndOddTypes() throws IOException {
+        List<Product> products = parseFixture();
+
+        Product paper = products.get(1);
+        assertEquals("false", paper.getSku());
+        assertNull(paper.getDescription());
+        assertTrue(paper.getWebUrls().isEmpty());
+        assertEquals(Collections.<Integer>emptyList(), paper.getCategoryIds());
+
+        Product unnamed = products.get(2);
+        assertNull(unnamed.getName());
+        assertNull(unnamed.getCategoryIds());
+        assertEquals("", unnamed.getWholesalePrice());
+    }
+
+    @Test
+    public void keepsOnlyPriceMeta() throws IOException {
+        List<Product> products = parseFixture();
+        // The b2b key wins over the list price
+        assertEquals("95.00", products.get(0).getWholesalePrice());
+        // Object/array values and the regular price are skipped; numbers read like Gson reads them
+        assertEquals("1150.0", products.get(1).getWholesalePrice());
+    }
+
+    @Test
+    public void sinkCanStopThePage() throws IOException {
+        final List<Product> seen = new ArrayList<>();
+        int count = ProductStreamParser.parse(fixture(), product -> {
+            seen.add(product);
+            return seen.size() < 2;
+        });
+        assertEquals(2, count);
+        assertEquals(2, seen.size());
+    }
+
+    private List<Product> parseFixture() throws IOException {
+        final List<Product> products = new ArrayList<>();
+        int count = ProductStreamParser.parse(fixture(), product -> {
+            products.add(product);
+            return true;
+        });
+        assertEquals(products.size(), count);
+        return products;
+    }
+
+    private Reader fixture() {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(FIXTURE);
+        assertNotNull(FIXTURE + " missing from test resources", in);
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.falconrep;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private static final long MAX_RETRY_AFTER_MS = TimeUnit.MINUTES.toMillis(2);
+
+    @Test
+    public void backoffStaysInTheJitterWindow() {
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            long ceiling = Math.min(30000, 500L << Math.min(attempt, 16));
+            for (int i = 0; i < 200; i++) {
+                long delay = RequestScheduler.backoffMs(attempt);
+                assertTrue("attempt " + attempt + ": " + delay, delay >= ceiling / 4 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        for (int i = 0; i < 200; i++) {
+            assertTrue(RequestScheduler.backoffMs(1000) <= 30000);
+        }
+    }
+
+    @Test
+    public void retryableCodes() {
+        for (int code : new int[]{408, 429, 500, 502, 503, 504}) {
+            assertTrue(String.valueOf(code), RequestScheduler.isRetryable(code));
+        }
+        for (int code : new int[]{200, 304, 400, 401, 403, 404, 501}) {
+            assertFalse(String.valueOf(code), RequestScheduler.isRetryable(code));
+        }
+    }
+
+    @Test
+    public void retryAfterSeconds() {
+        assertEquals(5000, RequestScheduler.retryAfterMs(response("5")));
+        assertEquals(0, RequestScheduler.retryAfterMs(response("0")));
+        assertEquals(0, RequestScheduler.retryAfterMs(response("-5")));
+    }
+
+    @Test
+    public void retryAfterHttpDate() {
+        long delay = RequestScheduler.retryAfterMs(response(httpDate(System.currentTimeMillis() + 30000)));
+        // The header only has whole seconds
+        assertTrue(String.valueOf(delay), delay > 28000 && delay <= 30000);
+
+        assertEquals(0, RequestScheduler.retryAfterMs(response(httpDate(System.currentTimeMillis() - 60000))));
+    }
+
+    @Test
+    public void retryAfterIsCapped() {
+        assertEquals(MAX_RETRY_AFTER_MS, RequestScheduler.retryAfterMs(response("86400")));
+        long oneHour = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        assertEquals(MAX_RETRY_AFTER_MS, RequestScheduler.retryAfterMs(response(httpDate(oneHour))));
+    }
+
+    @Test
+    public void retryAfterMissingOrUnreadable() {
+        assertEquals(-1, RequestScheduler.retryAfterMs(response(null)));
+        assertEquals(-1, RequestScheduler.retryAfterMs(response("soon")));
+    }
+
+    private static Response response(String retryAfter) {
+        Response.Builder builder = new Response.Builder()
+                .request(new Request.Builder().url("https://example.com/wp-json/wc/v3/products").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(429)
+                .message("Too Many Requests");
+        if (retryAfter != null) builder.header("Retry-After", retryAfter);
+        return builder.build();
+    }
+
+    private static String httpDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.falconrep;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyncCheckpointTest {
+
+    private static final List<Integer> NONE = Collections.emptyList();
+
+    private FakePrefs prefs;
+    private SyncCheckpoint checkpoint;
+
+    @Before
+    public void setUp() {
+        prefs = new FakePrefs();
+        checkpoint = new SyncCheckpoint(prefs);
+        checkpoint.begin("2026-03-01T00:00:00", null);
+    }
+
+    @Test
+    public void freshCheckpointIsIdle() {
+        SyncCheckpoint fresh = new SyncCheckpoint(new FakePrefs());
+        assertFalse(fresh.isInProgress());
+        assertEquals(SyncCheckpoint.PHASE_DONE, fresh.getPhase());
+    }
+
+    @Test
+    public void stateSurvivesARestart() {
+        checkpoint.setPhase(SyncCheckpoint.PHASE_ZOMBIES);
+
+        SyncCheckpoint restored = new SyncCheckpoint(prefs);
+        assertTrue(restored.isInProgress());
+        assertEquals(checkpoint.getGeneration(), restored.getGeneration());
+        assertEquals(SyncCheckpoint.PHASE_ZOMBIES, restored.getPhase());
+        assertEquals("2026-03-01T00:00:00", restored.getStartedAt());
+    }
+
+    @Test
+    public void pendingParentsRoundTrip() {
+        checkpoint.onProductRangeCommitted(0, 50, Arrays.asList(3, 5, 3));
+        checkpoint.onProductRangeCommitted(50, 100, Arrays.asList(8));
+        assertEquals(Arrays.asList(3, 5, 8), checkpoint.getPendingVariationParents());
+
+        checkpoint.onVariationsCommitted(Arrays.asList(3, 8));
+        assertEquals(Arrays.asList(5), new SyncCheckpoint(prefs).getPendingVariationParents());
+    }
+
+    @Test
+    public void beginStartsOver() {
+        int generation = checkpoint.getGeneration();
+        checkpoint.onProductRangeCommitted(0, 50, Arrays.asList(1));
+        checkpoint.setPhase(SyncCheckpoint.PHASE_ZOMBIES);
+
+        checkpoint.begin("2026-03-02T00:00:00", "2026-03-01T00:00:00");
+        assertEquals(generation + 1, checkpoint.getGeneration());
+        assertEquals(SyncCheckpoint.PHASE_PRODUCTS, checkpoint.getPhase());
+        assertEquals(0, checkpoint.getProductsOffset());
+        assertEquals("2026-03-01T00:00:00", checkpoint.getModifiedAfter());
+        assertTrue(checkpoint.getPendingVariationParents().isEmpty());
+    }
+
+    @Test
+    public void finishEndsTheRun() {
+        checkpoint.onProductRangeCommitted(0, 50, Arrays.asList(1));
+        checkpoint.finish();
+        assertFalse(checkpoint.isInProgress());
+        assertFalse(new SyncCheckpoint(prefs).isInProgress());
+        assertTrue(checkpoint.getPendingVariationParents().isEmpty());
+    }
+
+    @Test
+    public void abandonEndsTheRunAndDropsItsState() {
+        checkpoint.onProductRangeCommitted(0, 50, Arrays.asList(1));
+        checkpoint.onProductRangeCommitted(100, 150, NONE);
+        checkpoint.abandon();
+        assertFalse(checkpoint.isInProgress());
+        assertFalse(new SyncCheckpoint(prefs).isInProgress());
+        assertTrue(checkpoint.getPendingVariationParents().isEmpty());
+
+        // The next generation doesn't inherit the range that was ahead of the offset
+        checkpoint.begin("2026-03-02T00:00:00", null);
+        checkpoint.onProductRangeCommitted(0, 100, NONE);
+        assertEquals(100, checkpoint.getProductsOffset());
+    }
+
+    @Test
+    public void inOrderRangesAdvanceTheOffset() {
+        checkpoint.onProductRangeCommitted(0, 50, NONE);
+        assertEquals(50, checkpoint.getProductsOffset());
+        checkpoint.onProductRangeCommitted(50, 100, NONE);
+        assertEquals(100, checkpoint.getProductsOffset());
+    }
+
+    @Test
+    public void outOfOrderRangesWaitForTheGap() {
+        checkpoint.onProductRangeCommitted(50, 100, NONE);
+        checkpoint.onProductRangeCommitted(100, 150, NONE);
+        assertEquals(0, checkpoint.getProductsOffset());
+
+        checkpoint.onProductRangeCommitted(0, 50, NONE);
+        assertEquals(150, checkpoint.getProductsOffset());
+    }
+
+    @Test
+    public void gapKeepsTheOffset() {
+        checkpoint.onProductRangeCommitted(0, 50, NONE);
+        checkpoint.onProductRangeCommitted(100, 150, NONE);
+        assertEquals(50, checkpoint.getProductsOffset());
+    }
+
+    @Test
+    public void rangesOfDifferentSizesAndOverlaps() {
+        // per_page changed between requests
+        checkpoint.onProductRangeCommitted(40, 60, NONE);
+        checkpoint.onProductRangeCommitted(20, 45, NONE);
+        checkpoint.onProductRangeCommitted(0, 20, NONE);
+        assertEquals(60, checkpoint.getProductsOffset());
+
+        // A range that is already behind the offset changes nothing
+        checkpoint.onProductRangeCommitted(10, 30, NONE);
+        assertEquals(60, checkpoint.getProductsOffset());
+    }
+
+    @Test
+    public void onlyTheContiguousOffsetSurvivesARestart() {
+        checkpoint.onProductRangeCommitted(0, 100, NONE);
+        checkpoint.onProductRangeCommitted(200, 300, NONE);
+
+        // Ranges ahead of the offset aren't persisted; they are fetched again
+        assertEquals(100, new SyncCheckpoint(prefs).getProductsOffset());
+    }
+
+    @Test
+    public void beginDropsRangesFromTheOldGeneration() {
+        checkpoint.onProductRangeCommitted(100, 150, NONE);
+        checkpoint.begin("2026-03-02T00:00:00", null);
+
+        checkpoint.onProductRangeCommitted(0, 50, NONE);
+        checkpoint.onProductRangeCommitted(50, 100, NONE);
+        assertEquals(100, checkpoint.getProductsOffset());
+    }
+
+    // In-memory SharedPreferences; edits are visible once committed
+    private static class FakePrefs implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override public Map<String, ?> getAll() { return new HashMap<>(values); }
+        @Override public String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+        @SuppressWarnings("unchecked")
+        @Override public Set<String> getStringSet(String key, Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+        @Override public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+        @Override public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+        @Override public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+        @Override public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+        @Override public boolean contains(String key) { return values.containsKey(key); }
+        @Override public Editor edit() { return new FakeEditor(); }
+        @Override public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+        @Override public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+
+        private class FakeEditor implements Editor {
+            private final Map<String, Object> pending = new HashMap<>();
+            private boolean clear;
+
+            @Override public Editor putString(String key, String value) { pending.put(key, value); return this; }
+            @Override public Editor putStringSet(String key, Set<String> values) { pending.put(key, values); return this; }
+            @Override public Editor putInt(String key, int value) { pending.put(key, value); return this; }
+            @Override public Editor putLong(String key, long value) { pending.put(key, value); return this; }
+            @Override public Editor putFloat(String key, float value) { pending.put(key, value); return this; }
+            @Override public Editor putBoolean(String key, boolean value) { pending.put(key, value); return this; }
+            @Override public Editor remove(String key) { pending.put(key, null); return this; }
+            @Override public Editor clear() { clear = true; return this; }
+
+            @Override public boolean commit() {
+                if (clear) values.clear();
+                for (Map.Entry<String, Object> e : pending.entrySet()) {
+                    if (e.getValue() == null) values.remove(e.getKey());
+                    else values.put(e.getKey(), e.getValue());
+                }
+                return true;
+            }
+
+            @Override public void apply() { commit(); }
+        }
+    }
+}
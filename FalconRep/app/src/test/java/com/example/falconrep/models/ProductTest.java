@@ -0,0 +1,61 @@
+package com.example.falconrep.models;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ProductTest {
+
+    @Test
+    public void webUrlsStringJoinsInOrder() {
+        assertEquals("https://x/1.jpg###https://x/2.jpg",
+                product("120.00", images("https://x/1.jpg", "https://x/2.jpg"), categories(12)).getWebUrlsString());
+        assertEquals("", product("120.00", images(), categories(12)).getWebUrlsString());
+    }
+
+    @Test
+    public void sameProductSameHashes() {
+        Product a = product("120.00", images("https://x/1.jpg"), categories(12, 15));
+        Product b = product("120.00", images("https://x/1.jpg"), categories(12, 15));
+        assertEquals(a.getContentHash(), b.getContentHash());
+        assertEquals(a.getImageHash(), b.getImageHash());
+    }
+
+    @Test
+    public void contentHashCoversImagesAndCategoryIds() {
+        long base = product("120.00", images("https://x/1.jpg"), categories(12, 15)).getContentHash();
+        assertNotEquals(base, product("120.00", images("https://x/2.jpg"), categories(12, 15)).getContentHash());
+        assertNotEquals(base, product("120.00", images("https://x/1.jpg"), categories(12)).getContentHash());
+        assertNotEquals(base, product("120.00", images("https://x/1.jpg"), categories(1, 215)).getContentHash());
+    }
+
+    @Test
+    public void imageHashIgnoresEverythingButImages() {
+        Product a = product("120.00", images("https://x/1.jpg"), categories(12));
+        Product b = product("99.00", images("https://x/1.jpg"), categories(15));
+        assertNotEquals(a.getContentHash(), b.getContentHash());
+        assertEquals(a.getImageHash(), b.getImageHash());
+    }
+
+    private static Product product(String price, List<Product.Image> images, List<Product.CategoryStub> categories) {
+        return new Product(101, "Blue pen", "PEN-1", price, "Box of 12", "simple", "2026-03-01T10:00:00",
+                images, Collections.<Product.MetaData>emptyList(), categories);
+    }
+
+    private static List<Product.Image> images(String... urls) {
+        Product.Image[] images = new Product.Image[urls.length];
+        for (int i = 0; i < urls.length; i++) images[i] = new Product.Image(urls[i]);
+        return Arrays.asList(images);
+    }
+
+    private static List<Product.CategoryStub> categories(int... ids) {
+        Product.CategoryStub[] stubs = new Product.CategoryStub[ids.length];
+        for (int i = 0; i < ids.length; i++) stubs[i] = new Product.CategoryStub(ids[i], "Category " + ids[i]);
+        return Arrays.asList(stubs);
+    }
+}
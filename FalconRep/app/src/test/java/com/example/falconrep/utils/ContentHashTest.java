@@ -0,0 +1,43 @@
+package com.example.falconrep.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ContentHashTest {
+
+    private static final long PINNED = 0x58eeaafe1403c62cL;
+
+    @Test
+    public void sameInputSameHash() {
+        assertEquals(ContentHash.of("Blue pen", "SKU-1", "120.00"),
+                ContentHash.of("Blue pen", "SKU-1", "120.00"));
+    }
+
+    @Test
+    public void valueIsPinned() {
+        // Hashes are stored in the DB and compared on the next sync; changing the function
+        // would make every row look modified once
+        assertEquals(PINNED, ContentHash.of("Blue pen", null, "120.00"));
+    }
+
+    @Test
+    public void fieldBoundariesAreEncoded() {
+        assertNotEquals(ContentHash.of("ab", "c"), ContentHash.of("a", "bc"));
+        assertNotEquals(ContentHash.of("a", "b"), ContentHash.of("b", "a"));
+        assertNotEquals(ContentHash.of("a"), ContentHash.of("a", ""));
+    }
+
+    @Test
+    public void nullIsNotEmpty() {
+        assertNotEquals(ContentHash.of((String) null), ContentHash.of(""));
+        assertNotEquals(ContentHash.of("x", null), ContentHash.of("x", ""));
+    }
+
+    @Test
+    public void nonAsciiCharactersUseBothBytes() {
+        // U+0161 and U+0061 share the low byte
+        assertNotEquals(ContentHash.of("\u0161"), ContentHash.of("a"));
+    }
+}
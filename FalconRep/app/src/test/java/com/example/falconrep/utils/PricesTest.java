@@ -0,0 +1,53 @@
+package com.example.falconrep.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PricesTest {
+
+    @Test
+    public void parseRangeSinglePrice() {
+        assertArrayEquals(new long[]{12000, 12000}, Prices.parseRange("120.00"));
+        assertArrayEquals(new long[]{125000, 125000}, Prices.parseRange("1,250"));
+        assertArrayEquals(new long[]{75, 75}, Prices.parseRange(".75"));
+    }
+
+    @Test
+    public void parseRangeMinMax() {
+        assertArrayEquals(new long[]{9500, 14000}, Prices.parseRange("95.00 - 140.00"));
+        // Order in the label doesn't matter
+        assertArrayEquals(new long[]{9500, 14000}, Prices.parseRange("140.00 - 95.00"));
+    }
+
+    @Test
+    public void parseRangeRoundsToCents() {
+        assertArrayEquals(new long[]{13, 13}, Prices.parseRange("0.125"));
+    }
+
+    @Test
+    public void parseRangeWithoutAmount() {
+        assertNull(Prices.parseRange(null));
+        assertNull(Prices.parseRange(""));
+        assertNull(Prices.parseRange("Call for price"));
+    }
+
+    @Test
+    public void parseAmount() {
+        assertEquals(19999, Prices.parseAmount("199.99"));
+        assertEquals(20000, Prices.parseAmount("200"));
+        assertEquals(5000, Prices.parseAmount(" 50 "));
+        assertEquals(125000, Prices.parseAmount("1,250"));
+    }
+
+    @Test
+    public void parseAmountRejectsNonPrices() {
+        assertEquals(-1, Prices.parseAmount(null));
+        assertEquals(-1, Prices.parseAmount(""));
+        assertEquals(-1, Prices.parseAmount("abc"));
+        assertEquals(-1, Prices.parseAmount("12x"));
+        assertEquals(-1, Prices.parseAmount("10 - 20"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.falconrep.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SortedIdsTest {
+
+    @Test
+    public void normalizeSortsAndDropsDuplicates() {
+        int[] ids = {5, 3, 9, 3, 1, 5, 0, 0};
+        // Only the first 6 count; the trailing zeros are unused capacity
+        assertArrayEquals(new int[]{1, 3, 5, 9}, SortedIds.normalize(ids, 6));
+    }
+
+    @Test
+    public void normalizeEmpty() {
+        assertArrayEquals(new int[0], SortedIds.normalize(new int[4], 0));
+    }
+
+    @Test
+    public void minusKeepsIdsMissingFromTheOtherList() {
+        int[] local = {1, 2, 4, 7, 9, 12};
+        int[] remote = {2, 3, 7, 8, 12, 20};
+        assertArrayEquals(new int[]{1, 4, 9}, SortedIds.minus(local, remote));
+    }
+
+    @Test
+    public void minusEdgeCases() {
+        assertArrayEquals(new int[]{1, 2}, SortedIds.minus(new int[]{1, 2}, new int[0]));
+        assertArrayEquals(new int[0], SortedIds.minus(new int[0], new int[]{1, 2}));
+        assertArrayEquals(new int[0], SortedIds.minus(new int[]{1, 2}, new int[]{1, 2}));
+        assertArrayEquals(new int[]{10}, SortedIds.minus(new int[]{10}, new int[]{1, 2, 3}));
+    }
+
+    @Test
+    public void builderGrowsAndBuildsSortedUniqueIds() {
+        SortedIds.Builder builder = new SortedIds.Builder();
+        for (int i = 1000; i > 0; i--) {
+            builder.add(i);
+            builder.add(i); // every id twice, past the initial capacity
+        }
+        assertEquals(2000, builder.size());
+
+        int[] ids = builder.build();
+        assertEquals(1000, ids.length);
+        for (int i = 0; i < ids.length; i++) assertEquals(i + 1, ids[i]);
+    }
+}
@@ -15,4 +15,5 @@ dependencyResolutionManagement {
     }
 }
 rootProject.name = "FalconRep"
-include(":app")
\ No newline at end of file
+include(":app")
+include(":snapshot-tool")
\ No newline at end of file
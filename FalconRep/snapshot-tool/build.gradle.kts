@@ -0,0 +1,21 @@
+// Plain JVM tool that crawls the store once and writes a catalog snapshot zip for the app
+// (see SnapshotImporter). Run with:
+//   ./gradlew :snapshot-tool:run --args="--out catalog.zip --images"
+// WC_KEY / WC_SECRET are read from the environment.
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    // Same Gson as the app gets through converter-gson
+    implementation("com.google.code.gson:gson:2.8.5")
+}
+
+application {
+    mainClass.set("com.example.falconrep.snapshot.SnapshotTool")
+}
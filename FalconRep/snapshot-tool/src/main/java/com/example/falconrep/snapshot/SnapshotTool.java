@@ -0,0 +1,309 @@
+package com.example.falconrep.snapshot;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a catalog snapshot zip in the format SnapshotImporter (app module) reads:
+ * manifest.json, categories.json, products.json, variations.json and optionally images/.
+ *
+ * Usage: SnapshotTool --out catalog.zip [--base-url URL] [--images]
+ * Credentials come from the WC_KEY / WC_SECRET environment variables so they stay out of
+ * shell history.
+ */
+public class SnapshotTool {
+
+    private static final String DEFAULT_BASE_URL = "https://falconstationery.com/wp-json/wc/v3/";
+    private static final int FORMAT_VERSION = 1;
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_ATTEMPTS = 4;
+
+    // Keep in sync with WooCommerceAPI.PRODUCT_FIELDS / VARIATION_FIELDS in the app
+    private static final String PRODUCT_FIELDS = "id,name,sku,price,description,type,date_modified_gmt,images,meta_data,categories";
+    private static final String VARIATION_FIELDS = "id,price,attributes,image,meta_data";
+
+    private final String baseUrl;
+    private final String key;
+    private final String secret;
+    private final boolean withImages;
+    private final Gson gson = new Gson();
+
+    // Collected while writing products/variations, used by the later entries
+    private final List<Integer> variableIds = new ArrayList<>();
+    private final Map<String, String> images = new LinkedHashMap<>(); // file name -> url
+
+    private SnapshotTool(String baseUrl, String key, String secret, boolean withImages) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.key = key;
+        this.secret = secret;
+        this.withImages = withImages;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String out = null;
+        String baseUrl = DEFAULT_BASE_URL;
+        boolean withImages = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out": out = args[++i]; break;
+                case "--base-url": baseUrl = args[++i]; break;
+                case "--images": withImages = true; break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        String key = System.getenv("WC_KEY");
+        String secret = System.getenv("WC_SECRET");
+        if (out == null || key == null || secret == null) {
+            System.err.println("Usage: WC_KEY=... WC_SECRET=... SnapshotTool --out catalog.zip [--base-url URL] [--images]");
+            System.exit(2);
+        }
+
+        new SnapshotTool(baseUrl, key, secret, withImages).write(out);
+    }
+
+    private void write(String outPath) throws IOException {
+        // Taken before the crawl: anything edited while we run is picked up by the app's first delta sync
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String createdAt = format.format(new Date());
+
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outPath)))) {
+            // 1. Manifest first: the importer checks the format before touching its database
+            JsonObject manifest = new JsonObject();
+            manifest.addProperty("format", FORMAT_VERSION);
+            manifest.addProperty("created_at", createdAt);
+            zip.putNextEntry(new ZipEntry("manifest.json"));
+            zip.write(gson.toJson(manifest).getBytes("UTF-8"));
+            zip.closeEntry();
+
+            // 2. Categories
+            JsonWriter writer = beginArrayEntry(zip, "categories.json");
+            int categories = copyPages("products/categories", params("hide_empty", "false"), writer, null);
+            endArrayEntry(zip, writer);
+            log("categories: " + categories);
+
+            // 3. Products, oldest id first so the paging is stable while we crawl
+            writer = beginArrayEntry(zip, "products.json");
+            int products = copyPages("products",
+                    params("status", "publish", "orderby", "id", "order", "asc", "_fields", PRODUCT_FIELDS),
+                    writer, this::collectProduct);
+            endArrayEntry(zip, writer);
+            log("products: " + products);
+
+            // 4. Variations of every variable product
+            writer = beginArrayEntry(zip, "variations.json");
+            int variations = 0;
+            for (int parentId : variableIds) {
+                variations += copyPages("products/" + parentId + "/variations", params("_fields", VARIATION_FIELDS),
+                        writer, v -> collectVariation(parentId, v));
+            }
+            endArrayEntry(zip, writer);
+            log("variations: " + variations);
+
+            // 5. Images, named exactly like ImageWorker names its downloads
+            if (withImages) {
+                int done = 0;
+                for (Map.Entry<String, String> image : images.entrySet()) {
+                    try {
+                        byte[] bytes = download(image.getValue());
+                        zip.putNextEntry(new ZipEntry("images/" + image.getKey()));
+                        zip.write(bytes);
+                        zip.closeEntry();
+                        if (++done % 100 == 0) log("images: " + done + "/" + images.size());
+                    } catch (IOException e) {
+                        log("skipping image " + image.getValue() + ": " + e.getMessage());
+                    }
+                }
+                log("images: " + done);
+            }
+        }
+        log("wrote " + outPath + " (snapshot of " + createdAt + ")");
+    }
+
+    private void collectProduct(JsonObject product) {
+        int id = product.get("id").getAsInt();
+        if (product.has("type") && "variable".equalsIgnoreCase(product.get("type").getAsString())) {
+            variableIds.add(id);
+        }
+        JsonElement list = product.get("images");
+        if (list != null && list.isJsonArray()) {
+            JsonArray array = list.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                JsonElement src = array.get(i).getAsJsonObject().get("src");
+                if (src != null && !src.isJsonNull()) images.put("prod_" + id + "_" + i + ".jpg", src.getAsString());
+            }
+        }
+    }
+
+    private void collectVariation(int parentId, JsonObject variation) {
+        // The importer stores variations by parent, the REST payload doesn't say which one
+        variation.addProperty("parent_id", parentId);
+        JsonElement image = variation.get("image");
+        if (image != null && image.isJsonObject()) {
+            JsonElement src = image.getAsJsonObject().get("src");
+            if (src != null && !src.isJsonNull() && !src.getAsString().isEmpty()) {
+                images.put("var_" + parentId + "_" + variation.get("id").getAsInt() + ".jpg", src.getAsString());
+            }
+        }
+    }
+
+    private interface ItemVisitor {
+        void visit(JsonObject item);
+    }
+
+    // Pages through an endpoint and writes every element into the open array
+    private int copyPages(String path, Map<String, String> query, JsonWriter writer, ItemVisitor visitor) throws IOException {
+        int count = 0;
+        int page = 1;
+        int totalPages = 1;
+        while (page <= totalPages) {
+            Map<String, String> pageQuery = new LinkedHashMap<>(query);
+            pageQuery.put("per_page", String.valueOf(PAGE_SIZE));
+            pageQuery.put("page", String.valueOf(page));
+
+            HttpURLConnection conn = open(apiUrl(path, pageQuery));
+            String header = conn.getHeaderField("X-WP-TotalPages");
+            totalPages = header != null ? Integer.parseInt(header.trim()) : totalPages;
+
+            JsonArray items;
+            try (Reader reader = new InputStreamReader(body(conn), "UTF-8")) {
+                items = new JsonParser().parse(reader).getAsJsonArray();
+            }
+            for (JsonElement item : items) {
+                if (visitor != null) visitor.visit(item.getAsJsonObject());
+                gson.toJson(item, writer);
+                count++;
+            }
+            if (header == null && items.size() >= PAGE_SIZE) totalPages = page + 1;
+            page++;
+        }
+        return count;
+    }
+
+    private String apiUrl(String path, Map<String, String> query) throws IOException {
+        StringBuilder url = new StringBuilder(baseUrl).append(path)
+                .append("?consumer_key=").append(URLEncoder.encode(key, "UTF-8"))
+                .append("&consumer_secret=").append(URLEncoder.encode(secret, "UTF-8"));
+        for (Map.Entry<String, String> e : query.entrySet()) {
+            url.append('&').append(e.getKey()).append('=').append(URLEncoder.encode(e.getValue(), "UTF-8"));
+        }
+        return url.toString();
+    }
+
+    // Retries 429 / 5xx with backoff (or Retry-After) like the app does
+    private HttpURLConnection open(String url) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(30000);
+            conn.setReadTimeout(60000);
+            conn.setRequestProperty("User-Agent", "FalconRep/1.0");
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+
+            int code = conn.getResponseCode();
+            if (code == 200) return conn;
+
+            boolean retryable = code == 429 || code >= 500;
+            conn.disconnect();
+            if (!retryable || attempt >= MAX_ATTEMPTS) {
+                throw new IOException("HTTP " + code + " for " + url.replaceAll("consumer_(key|secret)=[^&]*", "consumer_$1=***"));
+            }
+            long delay = 1000L << attempt;
+            String retryAfter = conn.getHeaderField("Retry-After");
+            if (retryAfter != null) {
+                try { delay = Long.parseLong(retryAfter.trim()) * 1000; } catch (NumberFormatException ignored) {}
+            }
+            log("HTTP " + code + ", retrying in " + delay + "ms");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            }
+        }
+    }
+
+    private static InputStream body(HttpURLConnection conn) throws IOException {
+        InputStream in = conn.getInputStream();
+        return "gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    private byte[] download(String url) throws IOException {
+        HttpURLConnection conn = open(url);
+        try (InputStream in = body(conn)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
+            return out.toByteArray();
+        }
+    }
+
+    private static JsonWriter beginArrayEntry(ZipOutputStream zip, String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new KeepOpen(zip), "UTF-8"));
+        writer.beginArray();
+        return writer;
+    }
+
+    private static void endArrayEntry(ZipOutputStream zip, JsonWriter writer) throws IOException {
+        writer.endArray();
+        writer.close(); // flushes; KeepOpen stops it from closing the zip
+        zip.closeEntry();
+    }
+
+    private static Map<String, String> params(String... pairs) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) map.put(pairs[i], pairs[i + 1]);
+        return map;
+    }
+
+    private static void log(String message) {
+        System.out.println("[snapshot] " + message);
+    }
+
+    private static class KeepOpen extends FilterOutputStream {
+        KeepOpen(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}